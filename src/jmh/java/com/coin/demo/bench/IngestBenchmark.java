@@ -0,0 +1,69 @@
+package com.coin.demo.bench;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.journal.TradeIngestService;
+import com.coin.demo.journal.TradeIngestService.Receipt;
+
+/**
+ * Load test for single-trade ingestion: many clients recording trades at
+ * once, each committed to the database ({@code journal=false}) or appended
+ * to the trade journal ({@code journal=true}). Throughput is trades acked per
+ * second; the sample-time mode gives the ack latency distribution, p99
+ * included. Run under {@code bench-file} so both sides sync to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(16)
+public class IngestBenchmark {
+
+    private static final int USERS = 1_000;
+
+    @Param({ "false", "true" })
+    public boolean journal;
+
+    private SeededApplication app;
+    private TradeIngestService ingestService;
+    private final AtomicLong next = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        app = new SeededApplication(0, "journal.enabled=" + journal);
+        ingestService = app.bean(TradeIngestService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.close();
+    }
+
+    @Benchmark
+    public Receipt record() {
+        long userId = 1 + next.getAndIncrement() % USERS;
+        return ingestService.record(userId, AssetType.COIN, BigDecimal.ONE, "Toman",
+                BigDecimal.valueOf(45_000_000), OperationType.BUY, null, null);
+    }
+}
@@ -0,0 +1,85 @@
+package com.coin.demo.bench;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.service.PnlKernel;
+
+/**
+ * The P&L fold alone, on histories already in memory: BigDecimal loop versus
+ * the scaled-long kernel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PnlKernelBenchmark {
+
+    private static final String[] CURRENCIES = { "Toman", "Dollar", "Euro" };
+
+    @Param({ "10", "10000", "1000000" })
+    public int trades;
+
+    private List<Investment> history;
+    private PriceSnapshot prices;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(trades);
+        AssetType[] types = AssetType.values();
+        history = new ArrayList<>(trades);
+        for (int i = 0; i < trades; i++) {
+            history.add(Investment.builder()
+                    .userId(1L)
+                    .type(types[random.nextInt(types.length)])
+                    .operationType(random.nextInt(4) == 0 ? OperationType.SELL : OperationType.BUY)
+                    .amount(BigDecimal.valueOf(1 + random.nextInt(5_000_000), 6))
+                    .price(BigDecimal.valueOf(1 + random.nextInt(1_000_000_000), 2).setScale(6))
+                    .currency(CURRENCIES[random.nextInt(CURRENCIES.length)])
+                    .date(Instant.EPOCH.plusSeconds(i))
+                    .build());
+        }
+        Map<AssetType, BigDecimal> unit = new EnumMap<>(AssetType.class);
+        unit.put(AssetType.DOLLAR, new BigDecimal("95000"));
+        unit.put(AssetType.EURO, new BigDecimal("65000"));
+        unit.put(AssetType.COIN, new BigDecimal("45000000"));
+        unit.put(AssetType.HALF_COIN, new BigDecimal("23000000"));
+        unit.put(AssetType.QUARTER_COIN, new BigDecimal("13000000"));
+        unit.put(AssetType.CRYPTO, new BigDecimal("4000000000"));
+        prices = new PriceSnapshot(1, Instant.now(), unit);
+    }
+
+    @Benchmark
+    public Map<AssetType, BigDecimal> exact() {
+        return PnlKernel.exact(history, prices);
+    }
+
+    @Benchmark
+    public Map<AssetType, BigDecimal> fixedPoint() {
+        return PnlKernel.fixedPoint(history, prices);
+    }
+}
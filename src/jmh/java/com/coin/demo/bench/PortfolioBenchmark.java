@@ -0,0 +1,107 @@
+package com.coin.demo.bench;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.service.PortfolioService;
+import com.coin.demo.service.PricingService;
+import com.coin.demo.service.ValuationService;
+import com.coin.demo.service.ValuationService.ValuationSummary;
+
+/**
+ * Portfolio and valuation read paths against one seeded user. Each trade
+ * count boots its own in-memory database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PortfolioBenchmark {
+
+    private static final Instant FROM = Instant.parse("2000-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2100-01-01T00:00:00Z");
+
+    @Param({ "10", "10000", "1000000" })
+    public int trades;
+
+    private SeededApplication app;
+    private PortfolioService portfolioService;
+    private ValuationService valuationService;
+    private InvestmentRepository investmentRepository;
+    private PriceSnapshot prices;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        app = new SeededApplication(trades);
+        portfolioService = app.bean(PortfolioService.class);
+        valuationService = app.bean(ValuationService.class);
+        investmentRepository = app.bean(InvestmentRepository.class);
+        prices = app.bean(PricingService.class).currentSnapshot();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.close();
+    }
+
+    @Benchmark
+    public Map<AssetType, BigDecimal> calculateCurrentBalances() {
+        return portfolioService.calculateCurrentBalances(SeededApplication.USER_ID);
+    }
+
+    @Benchmark
+    public Map<AssetType, BigDecimal> calculateBalancesFromHistory() {
+        return portfolioService.calculateBalancesFromHistory(SeededApplication.USER_ID);
+    }
+
+    /** The original full-history entity scan, kept as a baseline for the ledger and projection paths. */
+    @Benchmark
+    public Map<AssetType, BigDecimal> calculateBalancesEntityScan() {
+        Map<AssetType, BigDecimal> totals = new EnumMap<>(AssetType.class);
+        for (Investment inv : investmentRepository.findByUserId(SeededApplication.USER_ID)) {
+            BigDecimal signed = inv.getOperationType() == OperationType.BUY ? inv.getAmount()
+                    : inv.getAmount().negate();
+            totals.merge(inv.getType(), signed, BigDecimal::add);
+        }
+        return totals;
+    }
+
+    @Benchmark
+    public Map<AssetType, BigDecimal> calculatePnlByAsset() {
+        return portfolioService.calculatePnlByAsset(SeededApplication.USER_ID, FROM, TO, prices);
+    }
+
+    @Benchmark
+    public ValuationSummary computePortfolioValuation() {
+        return valuationService.computePortfolioValuation(SeededApplication.USER_ID, prices);
+    }
+
+    @Benchmark
+    public ValuationSummary computePortfolioValuationFromHistory() {
+        return valuationService.computePortfolioValuationFromHistory(SeededApplication.USER_ID, prices);
+    }
+}
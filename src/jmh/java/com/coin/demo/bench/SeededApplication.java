@@ -0,0 +1,70 @@
+package com.coin.demo.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.coin.demo.DemoApplication;
+import com.coin.demo.service.PositionLedgerService;
+
+/**
+ * Boots the application (no web server, in-memory H2) and seeds one user with
+ * a synthetic history of the requested size.
+ *
+ * <p>{@code -Dbench.profiles} swaps in other Spring profiles, e.g.
+ * {@code bench-file} or {@code bench-file,perf}. File-backed databases go to
+ * a temporary directory that is deleted on close, as does the trade journal.
+ * Extra {@code key=value} properties can be passed per benchmark.
+ */
+final class SeededApplication implements AutoCloseable {
+
+    static final long USER_ID = 1L;
+
+    private final ConfigurableApplicationContext context;
+    private final Path dataDir;
+
+    SeededApplication(int trades, String... properties) {
+        this(System.getProperty("bench.profiles", "bench"), trades, properties);
+    }
+
+    /** With the given comma-separated profiles, ignoring {@code -Dbench.profiles}. */
+    SeededApplication(String profiles, int trades, String... properties) {
+        try {
+            dataDir = Files.createTempDirectory("investbot-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // JMH forks a fresh JVM per parameter value, so each run gets an empty database
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(profiles.split(","))
+                .properties("investbot.h2.path=" + dataDir.resolve("investbot"),
+                        "journal.dir=" + dataDir.resolve("journal"))
+                .properties(properties)
+                .run();
+        SyntheticHistory.insert(bean(JdbcTemplate.class), USER_ID, trades);
+        bean(PositionLedgerService.class).rebuild(USER_ID);
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // leave it to the OS temp cleanup
+        }
+    }
+}
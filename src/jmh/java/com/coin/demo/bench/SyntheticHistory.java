@@ -0,0 +1,54 @@
+package com.coin.demo.bench;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+
+/**
+ * Deterministic synthetic trade histories, inserted straight through JDBC so
+ * seeding a million rows doesn't dominate benchmark setup.
+ */
+final class SyntheticHistory {
+
+    private static final String[] CURRENCIES = { "Toman", "Dollar", "Euro" };
+    private static final int BATCH = 10_000;
+
+    private SyntheticHistory() {
+    }
+
+    static void insert(JdbcTemplate jdbc, long userId, int trades) {
+        Random random = new Random(userId * 31 + trades);
+        AssetType[] types = AssetType.values();
+        Instant start = Instant.parse("2020-01-01T00:00:00Z");
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < trades; i++) {
+            AssetType type = types[random.nextInt(types.length)];
+            OperationType op = random.nextInt(4) == 0 ? OperationType.SELL : OperationType.BUY;
+            BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(5_000_000), 6);
+            BigDecimal price = BigDecimal.valueOf(1 + random.nextInt(1_000_000_000), 2).setScale(6);
+            batch.add(new Object[] { userId, type.name(), amount, price, op.name(),
+                    CURRENCIES[random.nextInt(CURRENCIES.length)], Timestamp.from(start.plusSeconds(i * 60L)) });
+            if (batch.size() == BATCH) {
+                flush(jdbc, batch);
+            }
+        }
+        flush(jdbc, batch);
+    }
+
+    private static void flush(JdbcTemplate jdbc, List<Object[]> batch) {
+        if (batch.isEmpty())
+            return;
+        jdbc.batchUpdate("insert into investments (id, user_id, type, amount, price, operation_type, currency, date) "
+                + "values (next value for " + Investment.ID_SEQUENCE + ", ?, ?, ?, ?, ?, ?, ?)", batch);
+        batch.clear();
+    }
+}
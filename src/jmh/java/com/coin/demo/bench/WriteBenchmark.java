@@ -0,0 +1,99 @@
+package com.coin.demo.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.service.InvestmentImportService;
+import com.coin.demo.service.InvestmentImportService.ImportReport;
+import com.coin.demo.service.PortfolioService;
+
+/**
+ * Write paths: single-trade commits (one and eight threads) and chunked
+ * NDJSON imports, each on a file-backed H2 with the default datasource
+ * settings ({@code bench-file}) and with the {@code perf} profile's, so one
+ * run reports both side by side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WriteBenchmark {
+
+    private static final int USERS = 100;
+    private static final int IMPORT_ROWS = 1_000;
+
+    @Param({ "bench-file", "bench-file,perf" })
+    public String profiles;
+
+    private SeededApplication app;
+    private PortfolioService portfolioService;
+    private InvestmentImportService importService;
+    private String importChunk;
+    private final AtomicLong next = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        app = new SeededApplication(profiles, 0);
+        portfolioService = app.bean(PortfolioService.class);
+        importService = app.bean(InvestmentImportService.class);
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < IMPORT_ROWS; i++) {
+            ndjson.append("{\"userId\":").append(1 + i % USERS)
+                    .append(",\"type\":\"COIN\",\"amount\":1,\"currency\":\"Toman\",\"price\":45000000,")
+                    .append("\"operationType\":\"BUY\",\"date\":\"2025-01-01T00:00:00Z\"}\n");
+        }
+        importChunk = ndjson.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.close();
+    }
+
+    private Investment record() {
+        long userId = 1 + next.getAndIncrement() % USERS;
+        return portfolioService.recordTransaction(userId, AssetType.COIN, BigDecimal.ONE, "Toman",
+                BigDecimal.valueOf(45_000_000), OperationType.BUY, null);
+    }
+
+    @Benchmark
+    public Investment recordTransaction() {
+        return record();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Investment recordTransactionConcurrent() {
+        return record();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IMPORT_ROWS)
+    public ImportReport importNdjson() throws IOException {
+        return importService.importNdjson(new StringReader(importChunk));
+    }
+}
@@ -0,0 +1,86 @@
+package com.coin.demo.service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.coin.demo.domain.AssetType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Pie chart rendering for a typical six-asset portfolio. Run with the gc
+ * profiler (the default for ./gradlew jmh) to compare bytes allocated per chart.
+ * In the service package because the temp-file baseline needs the
+ * package-private {@link ChartService#createPieChart}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ChartBenchmark {
+
+    private static final String TITLE = "Portfolio (Toman)";
+
+    private ChartService chartService;
+    private Map<AssetType, BigDecimal> values;
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        chartService = new ChartService(new ChartCache(0, registry), new ChartRenderExecutor(1, 16, 10_000, registry));
+        values = new EnumMap<>(AssetType.class);
+        values.put(AssetType.DOLLAR, new BigDecimal("95000000"));
+        values.put(AssetType.EURO, new BigDecimal("32500000"));
+        values.put(AssetType.COIN, new BigDecimal("180000000"));
+        values.put(AssetType.HALF_COIN, new BigDecimal("46000000"));
+        values.put(AssetType.QUARTER_COIN, new BigDecimal("13000000"));
+        values.put(AssetType.CRYPTO, new BigDecimal("400000000"));
+    }
+
+    /** Cache size 0, so every call renders into a fresh buffer and streams it out without a copy. */
+    @Benchmark
+    public void writePortfolioPieChartPng() throws IOException {
+        chartService.writePortfolioPieChart(values, TITLE, ChartFormat.PNG, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void writePortfolioPieChartSvg() throws IOException {
+        chartService.writePortfolioPieChart(values, TITLE, ChartFormat.SVG, OutputStream.nullOutputStream());
+    }
+
+    /** The previous temp-file path (BufferedImage, ImageIO to disk, read back), kept as a baseline. */
+    @Benchmark
+    public int tempFileBaseline() throws IOException {
+        BufferedImage image = chartService.createPieChart(values, TITLE)
+                .createBufferedImage(ChartService.WIDTH, ChartService.HEIGHT);
+        Path file = Files.createTempFile("portfolio-", ".png");
+        try {
+            ImageIO.write(image, "png", file.toFile());
+            return Files.readAllBytes(file).length;
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
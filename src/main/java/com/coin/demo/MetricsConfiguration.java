@@ -0,0 +1,24 @@
+package com.coin.demo;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Enables {@code @Timed} on beans. Service classes annotated with
+ * {@code @Timed(SERVICE_TIMER)} get one timer per public method, tagged with
+ * {@code class}, {@code method} and {@code exception}; percentiles and
+ * histogram buckets for it are configured in application.properties.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    public static final String SERVICE_TIMER = "investbot.service";
+
+    @Bean
+    TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
@@ -1,33 +1,74 @@
 package com.coin.demo.bot;
 
-import java.io.File;
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import com.coin.demo.domain.AssetType;
 import com.coin.demo.domain.OperationType;
+import com.coin.demo.journal.TradeIngestService;
+import com.coin.demo.service.ChartFormat;
+import com.coin.demo.service.ChartImage;
+import com.coin.demo.service.ChartRenderRejectedException;
 import com.coin.demo.service.ChartService;
 import com.coin.demo.service.PortfolioService;
 
-import lombok.RequiredArgsConstructor;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 
 @Service
-@RequiredArgsConstructor
 @ConditionalOnProperty(prefix = "telegram.bot", name = "enabled", havingValue = "true")
 public class TelegramBotService extends TelegramLongPollingBot {
 
     private final PortfolioService portfolioService;
+    private final TradeIngestService tradeIngestService;
     private final ChartService chartService;
     private final TelegramProperties properties;
+    private final MeterRegistry meterRegistry;
+    /** {@code telegram.command.duration}, one timer per command and outcome, keyed {@code command/outcome}. */
+    private final Map<String, Timer> commandTimers = new HashMap<>();
+
+    private UpdateDispatcher dispatcher;
+    private TelegramOutbox outbox;
+
+    public TelegramBotService(PortfolioService portfolioService, TradeIngestService tradeIngestService,
+            ChartService chartService, TelegramProperties properties, MeterRegistry meterRegistry) {
+        this.portfolioService = portfolioService;
+        this.tradeIngestService = tradeIngestService;
+        this.chartService = chartService;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        for (String command : List.of("buy", "sell", "portfolio", "other")) {
+            for (String outcome : List.of("ok", "error")) {
+                commandTimers.put(command + "/" + outcome, Timer.builder("telegram.command.duration")
+                        .tag("command", command).tag("outcome", outcome)
+                        .publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry));
+            }
+        }
+    }
+
+    @PostConstruct
+    void startDispatcher() {
+        outbox = new TelegramOutbox(this, properties.getOutbox(), meterRegistry);
+        dispatcher = new UpdateDispatcher(this::handleUpdate, properties.getDispatch().getMaxConcurrency(),
+                properties.getDispatch().getPerChatQueueCapacity());
+    }
+
+    @PreDestroy
+    void stopDispatcher() {
+        dispatcher.close();
+        outbox.close();
+    }
 
     @Override
     public String getBotUsername() {
@@ -39,30 +80,51 @@ public class TelegramBotService extends TelegramLongPollingBot {
         return properties.getToken();
     }
 
+    /**
+     * Called on the long-polling thread; hands the update to the dispatcher so
+     * polling continues while it is processed.
+     */
     @Override
     public void onUpdateReceived(Update update) {
+        if (!dispatcher.dispatch(update)) {
+            sendText(UpdateDispatcher.chatIdOf(update).toString(),
+                    "Too many commands in progress, please wait for the previous ones to finish.");
+        }
+    }
+
+    void handleUpdate(Update update) {
         if (!update.hasMessage() || !update.getMessage().hasText()) {
             return;
         }
         String chatId = update.getMessage().getChatId().toString();
         String text = update.getMessage().getText().trim();
 
+        String command = "other";
+        String outcome = "ok";
+        long started = System.nanoTime();
         try {
             if (text.startsWith("/buy")) {
-                handleBuy(chatId, text);
+                command = "buy";
+                handleBuy(chatId, text, update.getUpdateId());
             } else if (text.startsWith("/sell")) {
-                handleSell(chatId, text);
+                command = "sell";
+                handleSell(chatId, text, update.getUpdateId());
             } else if (text.startsWith("/portfolio")) {
+                command = "portfolio";
                 handlePortfolio(chatId, text);
             } else {
                 sendText(chatId, "Commands: /buy, /sell, /portfolio");
             }
         } catch (Exception e) {
+            outcome = "error";
             sendText(chatId, "Error: " + e.getMessage());
+        } finally {
+            // time to handle the command and queue the replies; delivery is timed by the outbox
+            commandTimers.get(command + "/" + outcome).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         }
     }
 
-    private void handleBuy(String chatId, String text) {
+    private void handleBuy(String chatId, String text, Integer updateId) {
         // Format: /buy <ASSET> <AMOUNT> <CURRENCY> <PRICE>
         String[] parts = text.split("\\s+");
         if (parts.length < 5) {
@@ -73,12 +135,12 @@ public class TelegramBotService extends TelegramLongPollingBot {
         BigDecimal amount = new BigDecimal(parts[2]);
         String currency = parts[3];
         BigDecimal price = new BigDecimal(parts[4]);
-        portfolioService.recordTransaction(Long.valueOf(chatId), type, amount, currency, price, OperationType.BUY,
-                Instant.now());
+        tradeIngestService.record(Long.valueOf(chatId), type, amount, currency, price, OperationType.BUY,
+                Instant.now(), idempotencyKey(updateId));
         sendText(chatId, "Recorded BUY of " + amount + " " + type + ".");
     }
 
-    private void handleSell(String chatId, String text) {
+    private void handleSell(String chatId, String text, Integer updateId) {
         // Format: /sell <ASSET> <AMOUNT> <CURRENCY> <PRICE>
         String[] parts = text.split("\\s+");
         if (parts.length < 5) {
@@ -89,12 +151,17 @@ public class TelegramBotService extends TelegramLongPollingBot {
         BigDecimal amount = new BigDecimal(parts[2]);
         String currency = parts[3];
         BigDecimal price = new BigDecimal(parts[4]);
-        portfolioService.recordTransaction(Long.valueOf(chatId), type, amount, currency, price, OperationType.SELL,
-                Instant.now());
+        tradeIngestService.record(Long.valueOf(chatId), type, amount, currency, price, OperationType.SELL,
+                Instant.now(), idempotencyKey(updateId));
         sendText(chatId, "Recorded SELL of " + amount + " " + type + ".");
     }
 
-    private void handlePortfolio(String chatId, String text) throws Exception {
+    /** Telegram redelivers an update with the same id until polling confirms it, so the id keys the trade. */
+    private static String idempotencyKey(Integer updateId) {
+        return updateId == null ? null : "telegram-" + updateId;
+    }
+
+    private void handlePortfolio(String chatId, String text) {
         Map<AssetType, java.math.BigDecimal> balances = portfolioService.calculateCurrentBalances(Long.valueOf(chatId));
         if (balances.isEmpty()) {
             sendText(chatId, "Your portfolio is empty.");
@@ -104,20 +171,17 @@ public class TelegramBotService extends TelegramLongPollingBot {
         balances.forEach((k, v) -> sb.append(k.name()).append(": ").append(v).append('\n'));
         sendText(chatId, sb.toString());
 
-        File chart = chartService.generatePortfolioPieChart(balances, "Portfolio");
-        SendPhoto photo = new SendPhoto(chatId, new InputFile(chart));
+        ChartImage chart;
         try {
-            execute(photo);
-        } finally {
-            chart.delete();
+            chart = chartService.renderPortfolioPieChart(balances, "Portfolio", ChartFormat.PNG);
+        } catch (ChartRenderRejectedException e) {
+            sendText(chatId, "Chart is busy right now, try /portfolio again in a moment.");
+            return;
         }
+        outbox.sendPhoto(chatId, chart.toByteArray(), "portfolio.png");
     }
 
     private void sendText(String chatId, String msg) {
-        SendMessage sm = new SendMessage(chatId, msg);
-        try {
-            execute(sm);
-        } catch (Exception ignored) {
-        }
+        outbox.sendText(chatId, msg);
     }
 }
@@ -0,0 +1,287 @@
+package com.coin.demo.bot;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Asynchronous outbound queue for bot replies. Each chat's messages are sent
+ * in order, one request in flight per chat, paced by a per-chat and a global
+ * token bucket. A 429 pauses the chat for the {@code retry_after} Telegram
+ * asks for and retries; adjacent text messages waiting for the same chat are
+ * merged into one. All scheduling happens on a single outbox thread, so the
+ * buckets and per-chat timers need no locking; the HTTP calls themselves go
+ * through {@code executeAsync}.
+ */
+@Slf4j
+public class TelegramOutbox implements AutoCloseable {
+
+    private final AbsSender sender;
+    private final TelegramProperties.Outbox config;
+    private final TokenBucket global;
+    private final ConcurrentHashMap<String, ChatQueue> chats = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("telegram-outbox").daemon().factory());
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Timer textLatency;
+    private final Timer photoLatency;
+    private final Counter retries;
+    private final Counter dropped;
+    private final Counter merged;
+
+    public TelegramOutbox(AbsSender sender, TelegramProperties.Outbox config, MeterRegistry registry) {
+        this.sender = sender;
+        this.config = config;
+        this.global = new TokenBucket(config.getGlobalPerSecond(), Math.max(1, config.getGlobalPerSecond()));
+        this.textLatency = Timer.builder("telegram.send.latency").tag("type", "text")
+                .publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.photoLatency = Timer.builder("telegram.send.latency").tag("type", "photo")
+                .publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.retries = Counter.builder("telegram.send.retries").register(registry);
+        this.dropped = Counter.builder("telegram.send.dropped").register(registry);
+        this.merged = Counter.builder("telegram.send.merged").register(registry);
+        Gauge.builder("telegram.send.queued", queued, AtomicInteger::get).register(registry);
+    }
+
+    public void sendText(String chatId, String text) {
+        enqueue(chatId, new Outgoing(chatId, text, null, null, System.nanoTime(), 1));
+    }
+
+    public void sendPhoto(String chatId, byte[] image, String fileName) {
+        enqueue(chatId, new Outgoing(chatId, null, image, fileName, System.nanoTime(), 1));
+    }
+
+    private void enqueue(String chatId, Outgoing message) {
+        while (true) {
+            ChatQueue q = chats.computeIfAbsent(chatId, id -> new ChatQueue(id, config));
+            synchronized (q) {
+                if (q.retired)
+                    continue;
+                if (q.pending.size() >= config.getMaxQueuedPerChat()) {
+                    dropped.increment();
+                    log.warn("Outbox for chat {} is full, dropping message", chatId);
+                    return;
+                }
+                q.pending.addLast(message);
+                queued.incrementAndGet();
+                if (q.active)
+                    return;
+                q.active = true;
+            }
+            schedule(q, 0);
+            return;
+        }
+    }
+
+    /** Runs on the outbox thread: sends the chat's next message once both buckets allow it. */
+    private void pump(ChatQueue q) {
+        long now = System.nanoTime();
+        long wait = Math.max(0, q.notBefore - now);
+        if (wait == 0)
+            wait = q.bucket.nanosUntilAvailable(now);
+        if (wait == 0)
+            wait = global.nanosUntilAvailable(now);
+        if (wait > 0) {
+            schedule(q, wait);
+            return;
+        }
+        Outgoing message;
+        synchronized (q) {
+            message = takeMerged(q);
+            if (message == null) {
+                // idle: retire under the lock so enqueue can't add to a queue nobody pumps
+                q.active = false;
+                q.retired = true;
+                chats.remove(q.chatId, q);
+                return;
+            }
+        }
+        q.bucket.take(now);
+        global.take(now);
+        send(message).whenComplete((result, error) -> scheduler.execute(() -> onSent(q, message, error)));
+    }
+
+    private void onSent(ChatQueue q, Outgoing message, Throwable error) {
+        if (error == null) {
+            queued.decrementAndGet();
+            (message.isPhoto() ? photoLatency : textLatency)
+                    .record(System.nanoTime() - message.enqueuedAt(), TimeUnit.NANOSECONDS);
+            pump(q);
+            return;
+        }
+        Throwable cause = unwrap(error);
+        Integer retryAfter = retryAfterSeconds(cause);
+        if (retryAfter != null) {
+            retries.increment();
+            q.notBefore = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+            requeue(q, message);
+        } else if (message.attempt() < config.getMaxAttempts()) {
+            retries.increment();
+            q.notBefore = System.nanoTime() + TimeUnit.SECONDS.toNanos(message.attempt());
+            requeue(q, message.nextAttempt());
+        } else {
+            queued.decrementAndGet();
+            dropped.increment();
+            log.warn("Dropping message to chat {} after {} attempts: {}", q.chatId, message.attempt(),
+                    cause.toString());
+        }
+        pump(q);
+    }
+
+    private void requeue(ChatQueue q, Outgoing message) {
+        synchronized (q) {
+            q.pending.addFirst(message);
+        }
+    }
+
+    /** Takes the next message; consecutive texts are joined as long as they fit in one message. */
+    private Outgoing takeMerged(ChatQueue q) {
+        Outgoing first = q.pending.pollFirst();
+        if (first == null || first.isPhoto())
+            return first;
+        StringBuilder text = null;
+        while (!q.pending.isEmpty() && !q.pending.peekFirst().isPhoto()) {
+            String next = q.pending.peekFirst().text();
+            int length = (text == null ? first.text().length() : text.length()) + 2 + next.length();
+            if (length > config.getMaxMessageLength())
+                break;
+            if (text == null)
+                text = new StringBuilder(first.text());
+            text.append("\n\n").append(next);
+            q.pending.pollFirst();
+            queued.decrementAndGet();
+            merged.increment();
+        }
+        return text == null ? first : first.withText(text.toString());
+    }
+
+    private CompletableFuture<?> send(Outgoing message) {
+        try {
+            if (message.isPhoto()) {
+                InputFile file = new InputFile(new ByteArrayInputStream(message.image()), message.fileName());
+                return sender.executeAsync(new SendPhoto(message.chatId(), file));
+            }
+            return sender.executeAsync(new SendMessage(message.chatId(), message.text()));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void schedule(ChatQueue q, long delayNanos) {
+        try {
+            scheduler.schedule(() -> pump(q), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            // shutting down
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static Integer retryAfterSeconds(Throwable cause) {
+        if (cause instanceof TelegramApiRequestException e && e.getErrorCode() != null && e.getErrorCode() == 429) {
+            Integer retryAfter = e.getParameters() == null ? null : e.getParameters().getRetryAfter();
+            return retryAfter == null ? 1 : retryAfter;
+        }
+        return null;
+    }
+
+    /** Messages accepted but not yet delivered or dropped. */
+    public int queuedCount() {
+        return queued.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private record Outgoing(String chatId, String text, byte[] image, String fileName, long enqueuedAt,
+            int attempt) {
+
+        boolean isPhoto() {
+            return image != null;
+        }
+
+        Outgoing withText(String merged) {
+            return new Outgoing(chatId, merged, null, null, enqueuedAt, attempt);
+        }
+
+        Outgoing nextAttempt() {
+            return new Outgoing(chatId, text, image, fileName, enqueuedAt, attempt + 1);
+        }
+    }
+
+    private static final class ChatQueue {
+        final String chatId;
+        final Deque<Outgoing> pending = new ArrayDeque<>();
+        final TokenBucket bucket;
+        // guarded by this
+        boolean active;
+        boolean retired;
+        // outbox thread only
+        long notBefore;
+
+        ChatQueue(String chatId, TelegramProperties.Outbox config) {
+            this.chatId = chatId;
+            this.bucket = new TokenBucket(config.getPerChatPerSecond(), config.getPerChatBurst());
+        }
+    }
+
+    /** Classic token bucket; only used from the outbox thread. */
+    static final class TokenBucket {
+        private final double capacity;
+        private final double perNano;
+        private double tokens;
+        private long last;
+
+        TokenBucket(double ratePerSecond, double burst) {
+            this.capacity = Math.max(1, burst);
+            this.perNano = ratePerSecond / 1_000_000_000d;
+            this.tokens = capacity;
+            this.last = System.nanoTime();
+        }
+
+        long nanosUntilAvailable(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / perNano);
+        }
+
+        void take(long now) {
+            refill(now);
+            tokens -= 1;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - last) * perNano);
+            last = now;
+        }
+    }
+}
@@ -12,4 +12,30 @@ public class TelegramProperties {
     private boolean enabled;
     private String username;
     private String token;
+    private Dispatch dispatch = new Dispatch();
+    private Outbox outbox = new Outbox();
+
+    @Data
+    public static class Dispatch {
+        /** Updates handled at the same time across all chats. */
+        private int maxConcurrency = 64;
+        /** Updates allowed to wait behind a running one in the same chat. */
+        private int perChatQueueCapacity = 16;
+    }
+
+    @Data
+    public static class Outbox {
+        /** Messages per second across all chats (Telegram allows about 30). */
+        private double globalPerSecond = 30;
+        /** Sustained messages per second to one chat (Telegram allows about 1). */
+        private double perChatPerSecond = 1;
+        /** Messages one chat may send back to back before pacing kicks in. */
+        private int perChatBurst = 3;
+        /** Messages queued per chat before new ones are dropped. */
+        private int maxQueuedPerChat = 100;
+        /** Attempts for failures other than 429, which is always retried after retry_after. */
+        private int maxAttempts = 3;
+        /** Telegram's limit for one text message; adjacent texts are merged up to this length. */
+        private int maxMessageLength = 4096;
+    }
 }
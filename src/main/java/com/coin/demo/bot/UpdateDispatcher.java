@@ -0,0 +1,129 @@
+package com.coin.demo.bot;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fans Telegram updates out to virtual threads so one slow command doesn't
+ * stall other chats, while updates from the same chat are still handled one
+ * at a time in arrival order. A global semaphore caps how many handlers run
+ * at once, and each chat's backlog is bounded.
+ */
+@Slf4j
+public class UpdateDispatcher implements AutoCloseable {
+
+    private final Consumer<Update> handler;
+    private final Semaphore permits;
+    private final int perChatCapacity;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<Long, ChatLane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public UpdateDispatcher(Consumer<Update> handler, int maxConcurrency, int perChatCapacity) {
+        this.handler = handler;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.perChatCapacity = Math.max(1, perChatCapacity);
+    }
+
+    /**
+     * Queues an update for its chat. Returns false, without queueing, when that
+     * chat already has {@code perChatCapacity} updates waiting.
+     */
+    public boolean dispatch(Update update) {
+        Long chatId = chatIdOf(update);
+        if (chatId == null) {
+            // nothing to order against
+            executor.execute(() -> handle(update));
+            return true;
+        }
+        while (true) {
+            ChatLane lane = lanes.computeIfAbsent(chatId, id -> new ChatLane());
+            synchronized (lane) {
+                if (lane.retired)
+                    continue;
+                if (lane.pending.size() >= perChatCapacity) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                lane.pending.addLast(update);
+                if (lane.draining)
+                    return true;
+                lane.draining = true;
+            }
+            executor.execute(() -> drain(chatId, lane));
+            return true;
+        }
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    public int activeChats() {
+        return lanes.size();
+    }
+
+    private void drain(Long chatId, ChatLane lane) {
+        while (true) {
+            Update next;
+            synchronized (lane) {
+                next = lane.pending.pollFirst();
+                if (next == null) {
+                    // retire under the lock so a concurrent dispatch can't add to a lane nobody drains
+                    lane.retired = true;
+                    lanes.remove(chatId, lane);
+                    return;
+                }
+            }
+            handle(next);
+        }
+    }
+
+    private void handle(Update update) {
+        permits.acquireUninterruptibly();
+        try {
+            handler.accept(update);
+        } catch (RuntimeException e) {
+            log.warn("Unhandled error processing update {}", update.getUpdateId(), e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    static Long chatIdOf(Update update) {
+        if (update.hasMessage())
+            return update.getMessage().getChatId();
+        if (update.hasEditedMessage())
+            return update.getEditedMessage().getChatId();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS))
+                executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ChatLane {
+        final Deque<Update> pending = new ArrayDeque<>();
+        boolean draining;
+        boolean retired;
+    }
+}
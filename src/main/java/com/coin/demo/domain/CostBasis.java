@@ -0,0 +1,45 @@
+package com.coin.demo.domain;
+
+import java.math.BigDecimal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Net amount paid for an asset (buys minus sells), kept in the currency it was
+ * paid in so it can be converted with the current FX rate at read time.
+ */
+@Embeddable
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CostBasis {
+
+    @Column(name = "paid_toman", precision = 38, scale = 6)
+    private BigDecimal toman = BigDecimal.ZERO;
+
+    @Column(name = "paid_dollar", precision = 38, scale = 6)
+    private BigDecimal dollar = BigDecimal.ZERO;
+
+    @Column(name = "paid_euro", precision = 38, scale = 6)
+    private BigDecimal euro = BigDecimal.ZERO;
+
+    public BigDecimal get(CostCurrency currency) {
+        return switch (currency) {
+            case TOMAN -> toman;
+            case DOLLAR -> dollar;
+            case EURO -> euro;
+        };
+    }
+
+    public void add(CostCurrency currency, BigDecimal signedTotal) {
+        switch (currency) {
+            case TOMAN -> toman = toman.add(signedTotal);
+            case DOLLAR -> dollar = dollar.add(signedTotal);
+            case EURO -> euro = euro.add(signedTotal);
+        }
+    }
+}
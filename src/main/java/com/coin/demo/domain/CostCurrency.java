@@ -0,0 +1,31 @@
+package com.coin.demo.domain;
+
+/**
+ * Currency bucket a transaction's total price is paid in. Anything that is not
+ * a dollar or euro payment is treated as already being in toman.
+ */
+public enum CostCurrency {
+    TOMAN(null),
+    DOLLAR(AssetType.DOLLAR),
+    EURO(AssetType.EURO);
+
+    private final AssetType fxAsset;
+
+    CostCurrency(AssetType fxAsset) {
+        this.fxAsset = fxAsset;
+    }
+
+    /** Asset whose unit price converts this currency to toman, or null for toman itself. */
+    public AssetType fxAsset() {
+        return fxAsset;
+    }
+
+    public static CostCurrency of(String currency) {
+        // equalsIgnoreCase instead of toUpperCase: this runs once per trade and shouldn't allocate
+        if ("DOLLAR".equalsIgnoreCase(currency))
+            return DOLLAR;
+        if ("EURO".equalsIgnoreCase(currency))
+            return EURO;
+        return TOMAN;
+    }
+}
@@ -11,7 +11,9 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -19,15 +21,27 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "investments", indexes = @Index(name = "idx_investments_user", columnList = "userId"))
+@Table(name = "investments", indexes = @Index(name = "idx_investments_user_date", columnList = "userId, date"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_investments_user_idempotency_key",
+                columnNames = { "userId", "idempotencyKey" }))
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
 public class Investment {
 
+    public static final String ID_SEQUENCE = "investments_seq";
+    /** Ids reserved per sequence call; lets Hibernate batch inserts instead of one round trip per row. */
+    public static final int ID_ALLOCATION_SIZE = 50;
+    public static final int IDEMPOTENCY_KEY_LENGTH = 64;
+    /** Digits of {@code amount} and {@code price}, of which {@link #DECIMAL_SCALE} after the point. */
+    public static final int DECIMAL_PRECISION = 19;
+    public static final int DECIMAL_SCALE = 6;
+    public static final int CURRENCY_LENGTH = 255;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @NotNull
@@ -38,11 +52,11 @@ public class Investment {
     private AssetType type;
 
     @NotNull
-    @Column(precision = 19, scale = 6)
+    @Column(precision = DECIMAL_PRECISION, scale = DECIMAL_SCALE)
     private BigDecimal amount;
 
     @NotNull
-    @Column(precision = 19, scale = 6, nullable = false)
+    @Column(precision = DECIMAL_PRECISION, scale = DECIMAL_SCALE, nullable = false)
     private BigDecimal price;
 
     @NotNull
@@ -50,8 +64,13 @@ public class Investment {
     private OperationType operationType;
 
     @NotNull
+    @Column(length = CURRENCY_LENGTH)
     private String currency;
 
     @NotNull
     private Instant date;
+
+    /** Client-chosen key, unique per user, that makes resubmitting the same trade a no-op; null if none was sent. */
+    @Column(length = IDEMPOTENCY_KEY_LENGTH)
+    private String idempotencyKey;
 }
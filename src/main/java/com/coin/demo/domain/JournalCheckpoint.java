@@ -0,0 +1,33 @@
+package com.coin.demo.domain;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Highest trade-journal sequence number whose trade is in the database. It is
+ * written in the same transaction as the trades, so after a crash replaying
+ * the journal from here inserts each trade exactly once.
+ */
+@Entity
+@Table(name = "journal_checkpoint")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JournalCheckpoint {
+
+    /** There is only one row. */
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    private long appliedSeq;
+
+    private Instant updatedAt;
+}
@@ -0,0 +1,38 @@
+package com.coin.demo.domain;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A journaled trade the applier could not insert, kept so the journal can
+ * move past it. The trade is stored as text, since it may not fit the
+ * investments columns; {@code error} is why it failed.
+ */
+@Entity
+@Table(name = "journal_dead_letters")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JournalDeadLetter {
+
+    /** The entry's journal sequence number. */
+    @Id
+    private Long seq;
+
+    private Long userId;
+
+    @Lob
+    private String trade;
+
+    @Lob
+    private String error;
+
+    private Instant failedAt;
+}
@@ -1,6 +1,8 @@
 package com.coin.demo.domain;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.EnumMap;
 import java.util.Map;
 
 import jakarta.persistence.CollectionTable;
@@ -13,15 +15,21 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapKeyColumn;
 import jakarta.persistence.MapKeyEnumerated;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+/**
+ * Running per-user position ledger. Quantities and cost basis are folded in as
+ * each transaction is recorded so reads don't have to rescan the trade history.
+ */
 @Entity
-@Table(name = "portfolios")
+@Table(name = "portfolios", uniqueConstraints = @UniqueConstraint(name = "uk_portfolios_user", columnNames = "userId"))
 @Data
 @Builder
 @AllArgsConstructor
@@ -38,5 +46,34 @@ public class Portfolio {
     @CollectionTable(name = "portfolio_balances", joinColumns = @JoinColumn(name = "portfolio_id"))
     @MapKeyEnumerated(EnumType.STRING)
     @Column(name = "amount", precision = 19, scale = 6)
-    private Map<AssetType, BigDecimal> assetBalances;
+    @Builder.Default
+    private Map<AssetType, BigDecimal> assetBalances = new EnumMap<>(AssetType.class);
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "portfolio_cost_basis", joinColumns = @JoinColumn(name = "portfolio_id"))
+    @MapKeyEnumerated(EnumType.STRING)
+    @MapKeyColumn(name = "asset_type")
+    @Builder.Default
+    private Map<AssetType, CostBasis> costBasis = new EnumMap<>(AssetType.class);
+
+    /** Number of transactions folded into this ledger, used to detect drift. */
+    private long tradeCount;
+
+    private Instant updatedAt;
+
+    public void apply(Investment inv) {
+        boolean buy = inv.getOperationType() == OperationType.BUY;
+        apply(inv.getType(), CostCurrency.of(inv.getCurrency()),
+                buy ? inv.getAmount() : inv.getAmount().negate(),
+                buy ? inv.getPrice() : inv.getPrice().negate(), 1);
+    }
+
+    /** Folds in pre-aggregated signed totals covering {@code trades} transactions. */
+    public void apply(AssetType type, CostCurrency currency, BigDecimal signedQty, BigDecimal signedPaid,
+            long trades) {
+        assetBalances.merge(type, signedQty, BigDecimal::add);
+        costBasis.computeIfAbsent(type, t -> new CostBasis()).add(currency, signedPaid);
+        tradeCount += trades;
+        updatedAt = Instant.now();
+    }
 }
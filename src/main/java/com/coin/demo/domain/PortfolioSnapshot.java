@@ -7,10 +7,16 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Getter;
 import lombok.Setter;
 
 @Entity
+@Table(indexes = @Index(name = "idx_portfolio_snapshot_user_created", columnList = "userId, createdAt"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_portfolio_snapshot_run_user", columnNames = { "runId",
+                "userId" }))
 @Getter
 @Setter
 public class PortfolioSnapshot {
@@ -22,6 +28,9 @@ public class PortfolioSnapshot {
     private Long userId;
     private Instant createdAt;
 
+    /** Batch snapshot run that wrote this row; null for one-off snapshots. */
+    private Long runId;
+
     private BigDecimal totalToman;
 
     private BigDecimal dollarValue;
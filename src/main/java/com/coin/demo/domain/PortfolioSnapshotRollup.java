@@ -0,0 +1,93 @@
+package com.coin.demo.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregate of one user's {@link PortfolioSnapshot}s within an hour, day or
+ * week: open/close/min/max of the total and the closing value of each asset.
+ * Updated as snapshots are written, so history queries over long ranges read
+ * one row per bucket instead of every snapshot.
+ */
+@Entity
+@Table(name = "portfolio_snapshot_rollups", uniqueConstraints = @UniqueConstraint(
+        name = "uk_snapshot_rollups_bucket", columnNames = { "userId", "resolution", "bucketStart" }))
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PortfolioSnapshotRollup {
+
+    private static final String ID_SEQUENCE = "portfolio_snapshot_rollups_seq";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = 50)
+    private Long id;
+
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    private RollupResolution resolution;
+
+    private Instant bucketStart;
+
+    private long samples;
+
+    /** Timestamps of the snapshots that set open and close; snapshots may arrive out of order. */
+    private Instant firstAt;
+    private Instant lastAt;
+
+    private BigDecimal totalOpen;
+    private BigDecimal totalClose;
+    private BigDecimal totalMin;
+    private BigDecimal totalMax;
+
+    private BigDecimal dollarValue;
+    private BigDecimal euroValue;
+    private BigDecimal coinValue;
+    private BigDecimal halfCoinValue;
+    private BigDecimal quarterCoinValue;
+    private BigDecimal cryptoValue;
+
+    public static PortfolioSnapshotRollup empty(Long userId, RollupResolution resolution, Instant bucketStart) {
+        return PortfolioSnapshotRollup.builder().userId(userId).resolution(resolution).bucketStart(bucketStart)
+                .build();
+    }
+
+    public void add(PortfolioSnapshot s) {
+        BigDecimal total = s.getTotalToman();
+        Instant at = s.getCreatedAt();
+        if (samples == 0 || at.isBefore(firstAt)) {
+            firstAt = at;
+            totalOpen = total;
+        }
+        if (samples == 0 || !at.isBefore(lastAt)) {
+            lastAt = at;
+            totalClose = total;
+            dollarValue = s.getDollarValue();
+            euroValue = s.getEuroValue();
+            coinValue = s.getCoinValue();
+            halfCoinValue = s.getHalfCoinValue();
+            quarterCoinValue = s.getQuarterCoinValue();
+            cryptoValue = s.getCryptoValue();
+        }
+        totalMin = totalMin == null || total.compareTo(totalMin) < 0 ? total : totalMin;
+        totalMax = totalMax == null || total.compareTo(totalMax) > 0 ? total : totalMax;
+        samples++;
+    }
+}
@@ -0,0 +1,49 @@
+package com.coin.demo.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One observed unit price in toman. Append-only; a row is only written when an
+ * asset's price changes, so the table holds the price as a step function.
+ */
+@Entity
+@Table(name = "price_history", indexes = @Index(name = "idx_price_history_observed", columnList = "observedAt"))
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PriceQuote {
+
+    private static final String ID_SEQUENCE = "price_history_seq";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private AssetType type;
+
+    @Column(nullable = false)
+    private Instant observedAt;
+
+    @Column(nullable = false, precision = 38, scale = 6)
+    private BigDecimal priceToman;
+}
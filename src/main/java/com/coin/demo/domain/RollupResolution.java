@@ -0,0 +1,22 @@
+package com.coin.demo.domain;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/** Bucket sizes of the snapshot rollups, all aligned in UTC; weeks start on Monday. */
+public enum RollupResolution {
+    HOUR, DAY, WEEK;
+
+    public Instant bucketStart(Instant at) {
+        return switch (this) {
+            case HOUR -> at.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> at.truncatedTo(ChronoUnit.DAYS);
+            case WEEK -> at.atZone(ZoneOffset.UTC).toLocalDate()
+                    .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    .atStartOfDay(ZoneOffset.UTC).toInstant();
+        };
+    }
+}
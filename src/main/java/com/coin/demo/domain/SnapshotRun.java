@@ -0,0 +1,78 @@
+package com.coin.demo.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapKeyColumn;
+import jakarta.persistence.MapKeyEnumerated;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One pass of the batch snapshot job over all users. Holds the prices the run
+ * was started with, so a resumed run values the remaining users against the
+ * same snapshot, and the checkpoint it resumes from.
+ */
+@Entity
+@Table(name = "snapshot_runs")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SnapshotRun {
+
+    public enum Status {
+        RUNNING, COMPLETED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    /** Used as {@code createdAt} of every snapshot row the run writes. */
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    private long priceVersion;
+
+    private Instant pricedAt;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "snapshot_run_prices", joinColumns = @JoinColumn(name = "run_id"))
+    @MapKeyEnumerated(EnumType.STRING)
+    @MapKeyColumn(name = "asset_type")
+    @Column(name = "unit_price_toman", precision = 38, scale = 6)
+    @Builder.Default
+    private Map<AssetType, BigDecimal> prices = new EnumMap<>(AssetType.class);
+
+    /**
+     * Every user with an id up to and including this one has been snapshotted
+     * by this run. Starts below any id, since Telegram group chat ids are negative.
+     */
+    @Builder.Default
+    private long checkpointUserId = Long.MIN_VALUE;
+
+    private long usersProcessed;
+
+    private long rowsWritten;
+}
@@ -0,0 +1,105 @@
+package com.coin.demo.journal;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Recently used idempotency keys and the result each produced, kept for a time
+ * window and up to a maximum count, oldest first out. The first caller with a
+ * key runs the loader; concurrent and later callers with the same key wait
+ * for it and get its result. No lock is taken: a repeat of a finished key is
+ * one map read.
+ *
+ * <p>A loader that throws releases its key, so waiting callers and later
+ * retries try again. Keys that have left the index are for the loader to
+ * recognize, e.g. from a unique column.
+ */
+final class IdempotencyIndex<V> {
+
+    private final ConcurrentHashMap<String, Slot<V>> slots = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Slot<V>> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final long windowNanos;
+    private final int maxKeys;
+    private final LongSupplier nanoTime;
+
+    IdempotencyIndex(Duration window, int maxKeys, LongSupplier nanoTime) {
+        this.windowNanos = window.toNanos();
+        this.maxKeys = Math.max(1, maxKeys);
+        this.nanoTime = nanoTime;
+    }
+
+    /** The result for {@code key}: from the index if it is there, otherwise from {@code loader}. */
+    Outcome<V> resolve(String key, Supplier<V> loader) {
+        while (true) {
+            long now = nanoTime.getAsLong();
+            Slot<V> slot = slots.get(key);
+            if (slot != null && !slot.expired(now, windowNanos)) {
+                try {
+                    return new Outcome<>(slot.result.join(), true);
+                } catch (CompletionException | CancellationException e) {
+                    // the first attempt failed and released the key
+                    continue;
+                }
+            }
+            Slot<V> mine = new Slot<>(key, now);
+            boolean claimed = slot == null ? slots.putIfAbsent(key, mine) == null : slots.replace(key, slot, mine);
+            if (!claimed)
+                continue;
+            order.add(mine);
+            queued.incrementAndGet();
+            expire(now);
+            V value;
+            try {
+                value = loader.get();
+            } catch (RuntimeException | Error e) {
+                slots.remove(key, mine);
+                mine.result.completeExceptionally(e);
+                throw e;
+            }
+            mine.result.complete(value);
+            return new Outcome<>(value, false);
+        }
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    private void expire(long now) {
+        Slot<V> head;
+        while ((head = order.peek()) != null && (queued.get() > maxKeys || head.expired(now, windowNanos))) {
+            // only the thread whose remove succeeds accounts for it
+            if (order.remove(head)) {
+                queued.decrementAndGet();
+                slots.remove(head.key, head);
+            }
+        }
+    }
+
+    /** A result, and whether it was produced by an earlier call with the same key. */
+    record Outcome<V>(V value, boolean repeated) {
+    }
+
+    private static final class Slot<V> {
+        final String key;
+        final long createdNanos;
+        final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Slot(String key, long createdNanos) {
+            this.key = key;
+            this.createdNanos = createdNanos;
+        }
+
+        boolean expired(long now, long windowNanos) {
+            return now - createdNanos > windowNanos;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.coin.demo.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.OperationType;
+
+/**
+ * A trade as written to the journal. Enums are stored by name and decimals as
+ * strings, so entries stay readable across reorderings and scale changes.
+ * The idempotency key is optional and comes last.
+ */
+public record TradeEntry(Long userId, AssetType type, BigDecimal amount, String currency, BigDecimal price,
+        OperationType operationType, Instant date, String idempotencyKey) {
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(userId);
+            out.writeUTF(type.name());
+            out.writeUTF(amount.toString());
+            out.writeUTF(currency);
+            out.writeUTF(price.toString());
+            out.writeUTF(operationType.name());
+            out.writeLong(date.getEpochSecond());
+            out.writeInt(date.getNano());
+            out.writeBoolean(idempotencyKey != null);
+            if (idempotencyKey != null)
+                out.writeUTF(idempotencyKey);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static TradeEntry decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            Long userId = in.readLong();
+            AssetType type = AssetType.valueOf(in.readUTF());
+            BigDecimal amount = new BigDecimal(in.readUTF());
+            String currency = in.readUTF();
+            BigDecimal price = new BigDecimal(in.readUTF());
+            OperationType operationType = OperationType.valueOf(in.readUTF());
+            Instant date = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            // entries written before keys were journaled end here
+            String key = in.available() > 0 && in.readBoolean() ? in.readUTF() : null;
+            return new TradeEntry(userId, type, amount, currency, price, operationType, date, key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.coin.demo.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.JournalCheckpoint;
+import com.coin.demo.domain.JournalDeadLetter;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.repository.JournalCheckpointRepository;
+import com.coin.demo.repository.JournalDeadLetterRepository;
+import com.coin.demo.service.PortfolioService;
+import com.coin.demo.service.PositionLedgerService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Entry point for recording single trades. By default a trade is committed to
+ * the database before {@link #record} returns. With {@code journal.enabled}
+ * it is appended to the {@link TradeJournal} instead and acknowledged once
+ * synced; a background applier inserts journaled trades in batches and moves
+ * the {@link JournalCheckpoint} in the same transaction. On startup the
+ * entries after the checkpoint are applied again, so a crash neither loses an
+ * acknowledged trade nor inserts one twice. Applying starts once the
+ * application is ready, after the startup schema upgrade.
+ *
+ * <p>Trades are checked against the investments table before they are
+ * journaled, so a trade acknowledged with 202 normally inserts. One that still
+ * fails is retried on its own, and if it fails again it is moved to
+ * {@code journal_dead_letters} and the checkpoint moves past it, so it does
+ * not hold up the trades behind it.
+ *
+ * <p>A journaled trade shows up in balances and valuations once the applier
+ * has committed it, normally a few milliseconds later.
+ *
+ * <p>A trade may carry an idempotency key, unique per user. Keys seen within
+ * {@code idempotency.window} are answered from an {@link IdempotencyIndex},
+ * concurrent submissions of one key included; older ones are found through
+ * the unique {@code (user_id, idempotency_key)} constraint on investments.
+ * Either way the repeat gets the original receipt and nothing is written.
+ */
+@Slf4j
+@Service
+public class TradeIngestService {
+
+    private static final Duration POLL = Duration.ofMillis(200);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final PortfolioService portfolioService;
+    private final InvestmentRepository investmentRepository;
+    private final PositionLedgerService ledgerService;
+    private final JournalCheckpointRepository checkpointRepository;
+    private final JournalDeadLetterRepository deadLetterRepository;
+    private final Validator validator;
+    private final EntityManager entityManager;
+    private final TransactionTemplate tx;
+    private final MeterRegistry registry;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final DataSize segmentSize;
+    private final int batchSize;
+
+    private final Timer ackLatency;
+    private final DistributionSummary syncBatch;
+    private final DistributionSummary applyBatch;
+    private final Counter applyFailures;
+    private final Counter deadLetters;
+    private final Counter repeats;
+    private final IdempotencyIndex<Receipt> recentKeys;
+
+    private TradeJournal journal;
+    private Thread applier;
+    private volatile boolean running;
+    private volatile long appliedSeq;
+
+    public TradeIngestService(PortfolioService portfolioService, InvestmentRepository investmentRepository,
+            PositionLedgerService ledgerService, JournalCheckpointRepository checkpointRepository,
+            JournalDeadLetterRepository deadLetterRepository, Validator validator, EntityManager entityManager,
+            PlatformTransactionManager transactionManager, MeterRegistry registry,
+            @Value("${journal.enabled:false}") boolean enabled,
+            @Value("${journal.dir:./data/journal}") Path dir,
+            @Value("${journal.segment-size:64MB}") DataSize segmentSize,
+            @Value("${journal.apply-batch-size:500}") int batchSize,
+            @Value("${idempotency.window:10m}") Duration idempotencyWindow,
+            @Value("${idempotency.max-keys:100000}") int maxIdempotencyKeys) {
+        this.portfolioService = portfolioService;
+        this.investmentRepository = investmentRepository;
+        this.ledgerService = ledgerService;
+        this.checkpointRepository = checkpointRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.validator = validator;
+        this.entityManager = entityManager;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.registry = registry;
+        this.enabled = enabled;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.batchSize = Math.max(1, batchSize);
+        this.ackLatency = Timer.builder("journal.ack.latency").publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram().register(registry);
+        this.syncBatch = DistributionSummary.builder("journal.sync.batch").register(registry);
+        this.applyBatch = DistributionSummary.builder("journal.apply.batch").register(registry);
+        this.applyFailures = Counter.builder("journal.apply.failures").register(registry);
+        this.deadLetters = Counter.builder("journal.dead.letters").register(registry);
+        this.repeats = Counter.builder("idempotency.repeats").register(registry);
+        this.recentKeys = new IdempotencyIndex<>(idempotencyWindow, maxIdempotencyKeys, System::nanoTime);
+        Gauge.builder("idempotency.keys", recentKeys, IdempotencyIndex::size).register(registry);
+    }
+
+    /** Opens the journal, so trades can be journaled as soon as requests come in. */
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled)
+            return;
+        long checkpoint = checkpointRepository.findById(JournalCheckpoint.ID)
+                .map(JournalCheckpoint::getAppliedSeq).orElse(0L);
+        journal = TradeJournal.open(dir, Math.toIntExact(segmentSize.toBytes()), checkpoint, syncBatch::record);
+        appliedSeq = checkpoint;
+        journal.release(checkpoint);
+        Gauge.builder("journal.lag", this, s -> s.journal.durableSeq() - s.appliedSeq).register(registry);
+    }
+
+    /** Replays and applies entries only once startup has finished, so no insert races the id sequence upgrade. */
+    @EventListener(ApplicationReadyEvent.class)
+    void startApplier() {
+        if (!enabled)
+            return;
+        long checkpoint = appliedSeq;
+        long pending = journal.durableSeq() - checkpoint;
+        if (pending > 0)
+            log.info("Applying {} journaled trades recorded after entry {}", pending, checkpoint);
+        TradeJournal.Reader reader = journal.reader(checkpoint);
+        running = true;
+        applier = Thread.ofPlatform().name("trade-journal-apply").daemon().start(() -> applyLoop(reader));
+    }
+
+    /**
+     * Records a trade. The receipt carries the investment id when it was
+     * written directly, or the journal sequence number when it was journaled.
+     * With an idempotency key that was used before, the original receipt is
+     * returned, marked as a repeat.
+     *
+     * @throws IllegalArgumentException if the trade could not be stored
+     */
+    public Receipt record(Long userId, AssetType type, BigDecimal amount, String currency, BigDecimal price,
+            OperationType operationType, Instant date, String idempotencyKey) {
+        validate(toInvestment(new TradeEntry(userId, type, amount, currency, price, operationType,
+                date == null ? Instant.now() : date, idempotencyKey)));
+        if (idempotencyKey == null)
+            return submit(userId, type, amount, currency, price, operationType, date, null);
+        IdempotencyIndex.Outcome<Receipt> outcome = recentKeys.resolve(scoped(userId, idempotencyKey),
+                () -> submitOnce(userId, type, amount, currency, price, operationType, date, idempotencyKey));
+        if (!outcome.repeated())
+            return outcome.value();
+        repeats.increment();
+        return outcome.value().repeat();
+    }
+
+    private Receipt submitOnce(Long userId, AssetType type, BigDecimal amount, String currency, BigDecimal price,
+            OperationType operationType, Instant date, String idempotencyKey) {
+        Receipt stored = storedReceipt(userId, idempotencyKey);
+        if (stored != null)
+            return stored;
+        try {
+            return submit(userId, type, amount, currency, price, operationType, date, idempotencyKey);
+        } catch (DataIntegrityViolationException e) {
+            // stored by another instance, or just before this one restarted
+            stored = storedReceipt(userId, idempotencyKey);
+            if (stored == null)
+                throw e;
+            return stored;
+        }
+    }
+
+    private Receipt storedReceipt(Long userId, String idempotencyKey) {
+        return investmentRepository.findIdByIdempotencyKey(userId, idempotencyKey).map(id -> {
+            repeats.increment();
+            return new Receipt(id, null, true);
+        }).orElse(null);
+    }
+
+    private Receipt submit(Long userId, AssetType type, BigDecimal amount, String currency, BigDecimal price,
+            OperationType operationType, Instant date, String idempotencyKey) {
+        if (!enabled) {
+            Investment saved = portfolioService.recordTransaction(userId, type, amount, currency, price,
+                    operationType, date, idempotencyKey);
+            return new Receipt(saved.getId(), null, false);
+        }
+        long started = System.nanoTime();
+        try {
+            // the date is fixed now, so a replay records the same one
+            long seq = journal.append(new TradeEntry(userId, type, amount, currency, price, operationType,
+                    date == null ? Instant.now() : date, idempotencyKey));
+            return new Receipt(null, seq, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal the trade", e);
+        } finally {
+            ackLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Rejects a trade the investments table would not take: the entity's
+     * constraints, as on a direct insert, and the column sizes, which the
+     * database enforces. A journaled trade is acknowledged before it is
+     * inserted, so this can't be left to the insert.
+     */
+    private void validate(Investment trade) {
+        Set<ConstraintViolation<Investment>> violations = validator.validate(trade);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+        checkFits("amount", trade.getAmount());
+        checkFits("price", trade.getPrice());
+        if (trade.getCurrency().length() > Investment.CURRENCY_LENGTH)
+            throw new IllegalArgumentException(
+                    "currency must be at most " + Investment.CURRENCY_LENGTH + " characters");
+    }
+
+    private static void checkFits(String field, BigDecimal value) {
+        // the column keeps DECIMAL_SCALE decimals, so only the integer digits can overflow it
+        BigDecimal stored = value.setScale(Investment.DECIMAL_SCALE, RoundingMode.HALF_UP);
+        if (stored.precision() > Investment.DECIMAL_PRECISION) {
+            throw new IllegalArgumentException(field + " must have at most "
+                    + (Investment.DECIMAL_PRECISION - Investment.DECIMAL_SCALE) + " digits before the point");
+        }
+    }
+
+    public boolean journaling() {
+        return enabled;
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (!enabled)
+            return;
+        // not interrupted: an interrupt inside a JDBC call can close the database file
+        running = false;
+        try {
+            if (applier != null)
+                applier.join(POLL.multipliedBy(10).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // whatever wasn't applied yet is applied on the next start
+        journal.close();
+    }
+
+    private void applyLoop(TradeJournal.Reader reader) {
+        List<TradeJournal.Entry> batch = List.of();
+        while (running) {
+            try {
+                // a batch not yet applied is kept; the reader has already moved past it
+                if (batch.isEmpty())
+                    batch = reader.next(batchSize, POLL);
+                if (batch.isEmpty())
+                    continue;
+                try {
+                    apply(batch);
+                    batch = List.of();
+                } catch (RuntimeException e) {
+                    applyFailures.increment();
+                    log.warn("Applying {} journaled trades failed, applying them one at a time", batch.size(), e);
+                    batch = applyEach(batch);
+                }
+                if (!batch.isEmpty())
+                    Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies entries one at a time and moves those that fail to the dead
+     * letters. Returns the entries left over when the database itself is
+     * failing, to be retried later.
+     */
+    private List<TradeJournal.Entry> applyEach(List<TradeJournal.Entry> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            TradeJournal.Entry entry = batch.get(i);
+            try {
+                apply(List.of(entry));
+            } catch (TransientDataAccessException | RecoverableDataAccessException
+                    | CannotCreateTransactionException e) {
+                log.warn("Database unavailable, retrying journal entry {} in {}", entry.seq(), RETRY_DELAY, e);
+                return batch.subList(i, batch.size());
+            } catch (RuntimeException e) {
+                try {
+                    deadLetter(entry, e);
+                } catch (RuntimeException failed) {
+                    // nothing can be written, so it's the database failing rather than this trade
+                    log.warn("Could not set journal entry {} aside, retrying in {}", entry.seq(), RETRY_DELAY,
+                            failed);
+                    return batch.subList(i, batch.size());
+                }
+            }
+        }
+        return List.of();
+    }
+
+    private void apply(List<TradeJournal.Entry> entries) {
+        long last = entries.get(entries.size() - 1).seq();
+        List<Investment> journaled = entries.stream().map(e -> toInvestment(e.trade())).toList();
+        List<Investment> rows = tx.execute(status -> {
+            List<Investment> fresh = withoutStoredKeys(journaled);
+            if (!fresh.isEmpty()) {
+                investmentRepository.saveAll(fresh);
+                entityManager.flush();
+                ledgerService.applyAll(fresh);
+            }
+            checkpointRepository.save(new JournalCheckpoint(JournalCheckpoint.ID, last, Instant.now()));
+            entityManager.flush();
+            entityManager.clear();
+            return fresh;
+        });
+        applyBatch.record(rows.size());
+        advance(last);
+    }
+
+    /** Stores the entry in {@code journal_dead_letters} and moves the checkpoint past it, in one transaction. */
+    private void deadLetter(TradeJournal.Entry entry, RuntimeException cause) {
+        String error = NestedExceptionUtils.getMostSpecificCause(cause).toString();
+        tx.executeWithoutResult(status -> {
+            deadLetterRepository.save(new JournalDeadLetter(entry.seq(), entry.trade().userId(),
+                    entry.trade().toString(), error, Instant.now()));
+            checkpointRepository.save(new JournalCheckpoint(JournalCheckpoint.ID, entry.seq(), Instant.now()));
+            entityManager.flush();
+            entityManager.clear();
+        });
+        deadLetters.increment();
+        log.error("Journal entry {} could not be applied and was moved to journal_dead_letters: {}", entry.seq(),
+                error);
+        advance(entry.seq());
+    }
+
+    private void advance(long seq) {
+        appliedSeq = seq;
+        try {
+            journal.release(seq);
+        } catch (IOException e) {
+            // already applied; the segments go with a later release
+            log.warn("Could not delete applied journal segments", e);
+        }
+    }
+
+    /**
+     * Drops trades whose key is already stored or used earlier in the batch.
+     * The index only remembers keys since startup, so a key can be journaled
+     * twice when a client retries after a restart.
+     */
+    private List<Investment> withoutStoredKeys(List<Investment> rows) {
+        List<String> keys = rows.stream().map(Investment::getIdempotencyKey).filter(Objects::nonNull).toList();
+        if (keys.isEmpty())
+            return rows;
+        Set<String> seen = new HashSet<>(investmentRepository.findStoredIdempotencyKeys(keys));
+        List<Investment> fresh = new ArrayList<>(rows.size());
+        for (Investment inv : rows) {
+            if (inv.getIdempotencyKey() == null || seen.add(scoped(inv.getUserId(), inv.getIdempotencyKey())))
+                fresh.add(inv);
+        }
+        return fresh;
+    }
+
+    /** Same format as {@link InvestmentRepository#findStoredIdempotencyKeys}. */
+    private static String scoped(Long userId, String idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+    private static Investment toInvestment(TradeEntry trade) {
+        return Investment.builder()
+                .userId(trade.userId())
+                .type(trade.type())
+                .amount(trade.amount())
+                .currency(trade.currency())
+                .price(trade.price())
+                .operationType(trade.operationType())
+                .date(trade.date())
+                .idempotencyKey(trade.idempotencyKey())
+                .build();
+    }
+
+    /** How a trade was taken, and whether it repeated an earlier submission with the same key. */
+    public record Receipt(Long investmentId, Long journalSequence, boolean repeated) {
+
+        Receipt repeat() {
+            return new Receipt(investmentId, journalSequence, true);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.coin.demo.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only trade log in memory-mapped segment files, with group commit.
+ * Appenders copy their record into the mapped segment and wait; one flusher
+ * thread forces everything appended since its last force in a single call and
+ * then releases every appender it covered, so under load one sync
+ * acknowledges a whole burst.
+ *
+ * <p>A record is {@code [length:int][crc32c:int][seq:long][payload]}, the
+ * checksum covering sequence number and payload. Segments are preallocated
+ * and start zeroed, so an all-zero header marks the end of what was written.
+ * On open, the last segment is read up to the first record that doesn't check
+ * out (a write torn by a crash, which was never acknowledged) and the rest of
+ * it is zeroed.
+ *
+ * <p>Sequence numbers are consecutive from 1 and never reused; a segment file
+ * is named after its first one. {@link #release} deletes segments whose
+ * entries have all been applied, except the one being written.
+ */
+public final class TradeJournal implements Closeable {
+
+    static final int HEADER_BYTES = 16;
+    private static final String SUFFIX = ".journal";
+    private static final byte[] ZEROS = new byte[64 * 1024];
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final LongConsumer onFlush;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    /** Oldest first; the last one is written to. */
+    private final List<Segment> segments = new ArrayList<>();
+    private final Thread flusher;
+
+    private long lastSeq;
+    private long durableSeq;
+    private boolean closed;
+    private IOException failure;
+
+    private TradeJournal(Path dir, int segmentBytes, LongConsumer onFlush) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.onFlush = onFlush;
+        this.flusher = Thread.ofPlatform().name("trade-journal-flush").daemon().unstarted(this::flushLoop);
+    }
+
+    /**
+     * Opens the journal in {@code dir}, recovering what is there. Sequence
+     * numbers continue after the last entry, or after {@code startAfter} if
+     * that is higher (the files were removed after their entries were applied).
+     * {@code onFlush} is told how many entries each sync made durable.
+     */
+    public static TradeJournal open(Path dir, int segmentBytes, long startAfter, LongConsumer onFlush)
+            throws IOException {
+        if (segmentBytes <= HEADER_BYTES)
+            throw new IllegalArgumentException("Journal segments must be larger than " + HEADER_BYTES + " bytes");
+        Files.createDirectories(dir);
+        TradeJournal journal = new TradeJournal(dir, segmentBytes, onFlush);
+        journal.recover(startAfter);
+        journal.flusher.start();
+        return journal;
+    }
+
+    /** Appends the entry and returns its sequence number once it is durable. */
+    public long append(TradeEntry entry) throws IOException {
+        byte[] payload = entry.encode();
+        if (HEADER_BYTES + payload.length > segmentBytes)
+            throw new IllegalArgumentException("Journal entry of " + payload.length + " bytes exceeds the segment size");
+        lock.lock();
+        try {
+            if (closed)
+                throw new IOException("Journal is closed");
+            if (failure != null)
+                throw new IOException("Journal sync failed", failure);
+            Segment s = last();
+            if (s.end + HEADER_BYTES + payload.length > s.capacity())
+                s = roll();
+            long seq = lastSeq + 1;
+            s.write(seq, payload);
+            lastSeq = seq;
+            appended.signal();
+            while (durableSeq < seq) {
+                if (failure != null)
+                    throw new IOException("Journal sync failed", failure);
+                durable.awaitUninterruptibly();
+            }
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** A reader of durable entries after {@code afterSeq}, in order. */
+    public Reader reader(long afterSeq) {
+        lock.lock();
+        try {
+            long next = afterSeq + 1;
+            if (next < segments.get(0).firstSeq) {
+                throw new IllegalStateException(
+                        "Journal entries " + next + " to " + (segments.get(0).firstSeq - 1) + " are gone");
+            }
+            if (next > lastSeq + 1)
+                throw new IllegalArgumentException("Journal ends at entry " + lastSeq + ", not " + afterSeq);
+            Segment s = segments.get(0);
+            for (Segment candidate : segments) {
+                if (candidate.firstSeq <= next)
+                    s = candidate;
+            }
+            int offset = 0;
+            for (long seq = s.firstSeq; seq < next; seq++)
+                offset += HEADER_BYTES + s.buffer.getInt(offset);
+            return new Reader(s, offset, next);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Deletes segments whose entries are all at or below {@code appliedSeq}, never the one being written. */
+    public void release(long appliedSeq) throws IOException {
+        List<Segment> done = new ArrayList<>();
+        lock.lock();
+        try {
+            while (segments.size() > 1 && segments.get(0).lastSeq <= appliedSeq)
+                done.add(segments.remove(0));
+        } finally {
+            lock.unlock();
+        }
+        for (Segment s : done) {
+            s.channel.close();
+            Files.deleteIfExists(s.path);
+        }
+    }
+
+    public long lastSeq() {
+        lock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long durableSeq() {
+        lock.lock();
+        try {
+            return durableSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Syncs what was appended, releases waiting appenders and closes the files. */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (failure == null) {
+                last().buffer.force();
+                durableSeq = lastSeq;
+            }
+            durable.signalAll();
+            for (Segment s : segments)
+                s.channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recover(long startAfter) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            // names are zero-padded, so this is first-sequence order
+            files = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            String name = path.getFileName().toString();
+            long first = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            if (!segments.isEmpty() && first != last().lastSeq + 1)
+                throw new IOException("Journal segment " + path + " does not follow entry " + last().lastSeq);
+            Segment s = Segment.open(path, first);
+            // bytes after the last good record of an earlier segment are never read, and a
+            // gap shows up as the next segment not following; in the last one they're zeroed
+            if (!s.scan() && i == files.size() - 1)
+                s.zeroTail();
+            segments.add(s);
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(dir, Math.max(0, startAfter) + 1, segmentBytes));
+        } else if (last().lastSeq < startAfter) {
+            segments.add(Segment.create(dir, startAfter + 1, segmentBytes));
+        }
+        lastSeq = last().lastSeq;
+        durableSeq = lastSeq;
+    }
+
+    /** Moves appends to a new segment; called with the lock held. */
+    private Segment roll() throws IOException {
+        // the flusher only syncs the last segment, so finish this one here
+        last().buffer.force();
+        Segment next = Segment.create(dir, lastSeq + 1, segmentBytes);
+        segments.add(next);
+        return next;
+    }
+
+    private Segment segmentStartingAt(long seq) {
+        for (Segment s : segments) {
+            if (s.firstSeq == seq)
+                return s;
+        }
+        throw new IllegalStateException("Journal entry " + seq + " is missing");
+    }
+
+    private Segment last() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void flushLoop() {
+        lock.lock();
+        try {
+            while (true) {
+                while (!closed && durableSeq == lastSeq)
+                    appended.awaitUninterruptibly();
+                if (closed)
+                    return;
+                Segment s = last();
+                int from = s.forced;
+                int to = s.end;
+                long upTo = lastSeq;
+                // appenders keep writing past `to` while this sync runs; they'll be in the next one
+                lock.unlock();
+                try {
+                    s.buffer.force(from, to - from);
+                } finally {
+                    lock.lock();
+                }
+                s.forced = Math.max(s.forced, to);
+                onFlush.accept(upTo - durableSeq);
+                durableSeq = upTo;
+                durable.signalAll();
+            }
+        } catch (UncheckedIOException e) {
+            failure = e.getCause();
+            durable.signalAll();
+        } catch (RuntimeException | Error e) {
+            // the flusher is gone either way; fail appenders instead of leaving them waiting
+            failure = new IOException(e);
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int checksum(MappedByteBuffer buffer, int offset, int payloadLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + 8, 8 + payloadLength));
+        return (int) crc.getValue();
+    }
+
+    public record Entry(long seq, TradeEntry trade) {
+    }
+
+    /** Reads durable entries in order; meant for a single thread. */
+    public final class Reader {
+        private Segment segment;
+        private int offset;
+        private long nextSeq;
+
+        private Reader(Segment segment, int offset, long nextSeq) {
+            this.segment = segment;
+            this.offset = offset;
+            this.nextSeq = nextSeq;
+        }
+
+        /** Up to {@code max} entries, waiting up to {@code timeout} if none is durable yet. */
+        public List<Entry> next(int max, Duration timeout) throws InterruptedException {
+            long limit;
+            long currentLast;
+            Segment following = null;
+            lock.lock();
+            try {
+                long nanos = timeout.toNanos();
+                while (durableSeq < nextSeq && !closed && nanos > 0)
+                    nanos = durable.awaitNanos(nanos);
+                limit = Math.min(durableSeq, nextSeq + max - 1);
+                currentLast = segment.lastSeq;
+                if (limit > currentLast) {
+                    // crosses into the next segment; stop at its end so one call spans at most two
+                    following = segmentStartingAt(currentLast + 1);
+                    limit = Math.min(limit, following.lastSeq);
+                }
+            } finally {
+                lock.unlock();
+            }
+            // durable records never change, so they are decoded without the lock
+            List<Entry> out = new ArrayList<>((int) Math.max(0, limit - nextSeq + 1));
+            while (nextSeq <= limit) {
+                if (nextSeq > currentLast) {
+                    segment = following;
+                    currentLast = limit;
+                    offset = 0;
+                }
+                byte[] payload = new byte[segment.buffer.getInt(offset)];
+                segment.buffer.get(offset + HEADER_BYTES, payload);
+                out.add(new Entry(nextSeq, TradeEntry.decode(payload)));
+                offset += HEADER_BYTES + payload.length;
+                nextSeq++;
+            }
+            return out;
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final long firstSeq;
+        long lastSeq;
+        int end;
+        int forced;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, long firstSeq) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+        }
+
+        static Segment create(Path dir, long firstSeq, int bytes) throws IOException {
+            Path path = dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            // mapping past the end grows the file; the new pages read as zeros
+            Segment s = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes), firstSeq);
+            syncDirectory(dir);
+            return s;
+        }
+
+        static Segment open(Path path, long firstSeq) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()),
+                    firstSeq);
+        }
+
+        /** Makes a new file's directory entry durable; not every platform can open a directory. */
+        private static void syncDirectory(Path dir) {
+            try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+                d.force(true);
+            } catch (IOException e) {
+                // best effort
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        void write(long seq, byte[] payload) {
+            buffer.putLong(end + 8, seq);
+            buffer.put(end + HEADER_BYTES, payload);
+            buffer.putInt(end + 4, checksum(buffer, end, payload.length));
+            buffer.putInt(end, payload.length);
+            end += HEADER_BYTES + payload.length;
+            lastSeq = seq;
+        }
+
+        /** Finds the end of the valid records; false if it stopped at one that doesn't check out. */
+        boolean scan() {
+            long seq = firstSeq;
+            int offset = 0;
+            boolean clean = true;
+            while (offset + HEADER_BYTES <= capacity()) {
+                int length = buffer.getInt(offset);
+                if (length == 0) {
+                    clean = buffer.getInt(offset + 4) == 0 && buffer.getLong(offset + 8) == 0;
+                    break;
+                }
+                if (length < 0 || offset + HEADER_BYTES + length > capacity() || buffer.getLong(offset + 8) != seq
+                        || buffer.getInt(offset + 4) != checksum(buffer, offset, length)) {
+                    clean = false;
+                    break;
+                }
+                offset += HEADER_BYTES + length;
+                seq++;
+            }
+            end = offset;
+            forced = offset;
+            lastSeq = seq - 1;
+            return clean;
+        }
+
+        void zeroTail() {
+            for (int i = end; i < capacity(); i += ZEROS.length)
+                buffer.put(i, ZEROS, 0, Math.min(ZEROS.length, capacity() - i));
+            buffer.force();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.coin.demo.pricing;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.coin.demo.domain.AssetType;
+
+/**
+ * Scrapes USD/EUR buy prices and the full, half and quarter coin prices from
+ * the alanchand page. Coins the page doesn't list are left out.
+ */
+@Component
+public class AlanchandPriceSource implements PriceSource {
+
+    private final String url;
+    private final int timeoutMs;
+
+    public AlanchandPriceSource(@Value("${pricing.live.source:https://alanchand.com/en}") String url,
+            @Value("${pricing.live.timeout-ms:10000}") int timeoutMs) {
+        this.url = url;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public String name() {
+        return "alanchand";
+    }
+
+    @Override
+    public Map<AssetType, BigDecimal> fetch() throws IOException {
+        Document doc = Jsoup.connect(url).userAgent("Mozilla/5.0").timeout(timeoutMs).get();
+        return parse(doc);
+    }
+
+    static Map<AssetType, BigDecimal> parse(Document doc) {
+        Map<AssetType, BigDecimal> prices = new EnumMap<>(AssetType.class);
+        // Currencies (USD/EUR) - pick Buy Price
+        Elements rows = doc.select("table:contains(Currency Name) tr");
+        for (Element tr : rows) {
+            Elements tds = tr.select("td");
+            if (tds.size() >= 3) {
+                String name = tds.get(0).text().trim();
+                String buy = tds.get(1).text().replace(",", "").trim();
+                try {
+                    BigDecimal val = new BigDecimal(buy);
+                    if (name.equalsIgnoreCase("US Dollar"))
+                        prices.put(AssetType.DOLLAR, val);
+                    if (name.equalsIgnoreCase("Euro"))
+                        prices.put(AssetType.EURO, val);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        // Gold coin prices
+        Elements h3s = doc.select("h3");
+        for (Element h3 : h3s) {
+            String txt = h3.text();
+            Element priceEl = h3.nextElementSibling();
+            if (priceEl != null) {
+                String priceTxt = priceEl.text().replace(",", "").trim();
+                try {
+                    BigDecimal val = new BigDecimal(priceTxt);
+                    if (txt.contains("Full Coin") || txt.contains("Imami"))
+                        prices.put(AssetType.COIN, val);
+                    else if (txt.contains("Half Coin"))
+                        prices.put(AssetType.HALF_COIN, val);
+                    else if (txt.contains("Quarter Coin"))
+                        prices.put(AssetType.QUARTER_COIN, val);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return prices;
+    }
+}
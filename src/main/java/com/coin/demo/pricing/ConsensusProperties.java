@@ -0,0 +1,38 @@
+package com.coin.demo.pricing;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import com.coin.demo.domain.AssetType;
+
+import lombok.Data;
+
+@Configuration
+@ConfigurationProperties(prefix = "pricing.consensus")
+@Data
+public class ConsensusProperties {
+    /** Longest a refresh waits for a source before going ahead without it. */
+    private Duration deadline = Duration.ofSeconds(10);
+    /** Sources that must agree on an asset's price before it is published. */
+    private int quorum = 1;
+    /** Largest distance from the median, as a fraction of it, at which a quote still counts. */
+    private double maxDeviation = 0.05;
+    /** Additional JSON sources, by name. */
+    private Map<String, JsonSource> json = new LinkedHashMap<>();
+
+    @Data
+    public static class JsonSource {
+        private String url;
+        /** JSON Pointer to each asset's price in the response, e.g. {@code HALF_COIN=/data/half/price}. */
+        private Map<AssetType, String> assets = new LinkedHashMap<>();
+        /** Factor that turns the quoted number into toman, e.g. 0.1 for rial. */
+        private BigDecimal scale = BigDecimal.ONE;
+        /** Deadline for this source; the shared one when not set. */
+        private Duration deadline;
+    }
+}
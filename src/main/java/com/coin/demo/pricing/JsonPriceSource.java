@@ -0,0 +1,88 @@
+package com.coin.demo.pricing;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.coin.demo.domain.AssetType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads prices from a JSON endpoint. Each asset's number is found by a JSON
+ * Pointer and multiplied by {@code scale} to get toman (0.1 for rial). Numbers
+ * may also be strings with thousands separators.
+ */
+public class JsonPriceSource implements PriceSource {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final String name;
+    private final URI url;
+    private final Map<AssetType, String> pointers;
+    private final BigDecimal scale;
+    private final Duration timeout;
+    private final HttpClient http;
+
+    public JsonPriceSource(String name, String url, Map<AssetType, String> pointers, BigDecimal scale,
+            Duration timeout) {
+        this.name = name;
+        this.url = URI.create(url);
+        this.pointers = Map.copyOf(pointers);
+        this.scale = scale;
+        this.timeout = timeout;
+        this.http = HttpClient.newBuilder().connectTimeout(timeout).followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Map<AssetType, BigDecimal> fetch() throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(url).timeout(timeout).header("Accept", "application/json")
+                .GET().build();
+        HttpResponse<byte[]> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fetch from " + name + " interrupted");
+        }
+        if (response.statusCode() != 200)
+            throw new IOException(name + " answered HTTP " + response.statusCode());
+        return parse(JSON.readTree(response.body()));
+    }
+
+    Map<AssetType, BigDecimal> parse(JsonNode root) {
+        Map<AssetType, BigDecimal> prices = new EnumMap<>(AssetType.class);
+        pointers.forEach((type, pointer) -> {
+            BigDecimal value = number(root.at(pointer));
+            if (value != null && value.signum() > 0)
+                prices.put(type, value.multiply(scale));
+        });
+        return prices;
+    }
+
+    private static BigDecimal number(JsonNode node) {
+        if (node.isNumber())
+            return node.decimalValue();
+        if (node.isTextual()) {
+            try {
+                return new BigDecimal(node.asText().replace(",", "").trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,291 @@
+package com.coin.demo.pricing;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import com.coin.demo.domain.AssetType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Queries several {@link PriceSource}s at once, each on its own virtual thread
+ * and with its own deadline, and merges their quotes per asset. Quotes further
+ * than {@code maxDeviation} from the low median (the lower middle quote) are
+ * rejected as outliers; the median of the rest is used when at least
+ * {@code quorum} sources are left.
+ * Assets without a quorum are left out and keep their previous price.
+ *
+ * <p>A round waits for each source until its deadline at most, then goes ahead
+ * without it. A source still running from an earlier round is skipped until it
+ * returns, so a hung source ties up one thread rather than one per round. The
+ * round fails only when no source answered.
+ *
+ * <p>Metrics, tagged with the source name: {@code pricing.source.duration} by
+ * outcome, {@code pricing.source.skipped} and {@code pricing.source.outliers}.
+ */
+public class PriceAggregator implements PriceSource, AutoCloseable {
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    private final List<Member> members;
+    private final int quorum;
+    private final BigDecimal maxDeviation;
+    private final ExecutorService executor = Executors
+            .newThreadPerTaskExecutor(Thread.ofVirtual().name("price-source-", 0).factory());
+    private final AtomicReference<Round> lastRound = new AtomicReference<>();
+
+    public PriceAggregator(List<Provider> providers, int quorum, double maxDeviation, MeterRegistry registry) {
+        if (providers.isEmpty())
+            throw new IllegalArgumentException("No price sources configured");
+        this.members = providers.stream().map(p -> new Member(p, registry)).toList();
+        this.quorum = Math.max(1, quorum);
+        this.maxDeviation = BigDecimal.valueOf(maxDeviation);
+    }
+
+    @Override
+    public String name() {
+        return "consensus";
+    }
+
+    @Override
+    public Map<AssetType, BigDecimal> fetch() throws IOException {
+        long started = System.nanoTime();
+        List<CompletableFuture<SourceQuote>> pending = new ArrayList<>(members.size());
+        for (Member member : members)
+            pending.add(member.submit(executor));
+
+        List<SourceQuote> quotes = new ArrayList<>(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            CompletableFuture<SourceQuote> future = pending.get(i);
+            quotes.add(future == null ? member.skipped() : member.await(future, started));
+        }
+
+        Map<AssetType, Consensus> assets = merge(quotes, quorum, maxDeviation);
+        for (Member member : members)
+            member.countOutliers(assets);
+        Round round = new Round(Instant.now(), quotes, assets);
+        lastRound.set(round);
+
+        if (quotes.stream().noneMatch(q -> q.status() == Status.OK)) {
+            throw new IOException("No price source answered: " + quotes.stream()
+                    .map(q -> q.source() + " " + q.status()).collect(Collectors.joining(", ")));
+        }
+        Map<AssetType, BigDecimal> prices = new EnumMap<>(AssetType.class);
+        assets.forEach((type, consensus) -> {
+            if (consensus.price() != null)
+                prices.put(type, consensus.price());
+        });
+        return prices;
+    }
+
+    /** Every source's quote and the per-asset outcome of the latest round; null before the first one. */
+    public Round lastRound() {
+        return lastRound.get();
+    }
+
+    /**
+     * Median of each asset's quotes after rejecting those further than
+     * {@code maxDeviation} from their low median. The low median is one of the
+     * quotes, so at least that source is always kept; with an even count the
+     * midpoint could be far from every quote, rejecting them all.
+     */
+    static Map<AssetType, Consensus> merge(List<SourceQuote> quotes, int quorum, BigDecimal maxDeviation) {
+        Map<AssetType, Consensus> out = new EnumMap<>(AssetType.class);
+        for (AssetType type : AssetType.values()) {
+            List<SourceQuote> voters = new ArrayList<>();
+            List<BigDecimal> votes = new ArrayList<>();
+            for (SourceQuote quote : quotes) {
+                BigDecimal price = quote.status() == Status.OK ? quote.prices().get(type) : null;
+                if (price != null && price.signum() > 0) {
+                    voters.add(quote);
+                    votes.add(price);
+                }
+            }
+            if (votes.isEmpty())
+                continue;
+            BigDecimal reference = lowMedian(votes);
+            BigDecimal tolerance = reference.multiply(maxDeviation);
+            List<String> accepted = new ArrayList<>();
+            List<String> outliers = new ArrayList<>();
+            List<BigDecimal> kept = new ArrayList<>();
+            for (int i = 0; i < votes.size(); i++) {
+                if (votes.get(i).subtract(reference).abs().compareTo(tolerance) <= 0) {
+                    accepted.add(voters.get(i).source());
+                    kept.add(votes.get(i));
+                } else {
+                    outliers.add(voters.get(i).source());
+                }
+            }
+            BigDecimal price = kept.size() >= quorum ? median(kept) : null;
+            out.put(type, new Consensus(price, accepted, outliers));
+        }
+        return out;
+    }
+
+    static BigDecimal lowMedian(List<BigDecimal> values) {
+        List<BigDecimal> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get((sorted.size() - 1) / 2);
+    }
+
+    static BigDecimal median(List<BigDecimal> values) {
+        List<BigDecimal> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int mid = sorted.size() / 2;
+        if (sorted.size() % 2 == 1)
+            return sorted.get(mid);
+        // halving a decimal always terminates
+        return sorted.get(mid - 1).add(sorted.get(mid)).divide(TWO);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /** A source and how long a round waits for it. */
+    public record Provider(PriceSource source, Duration deadline) {
+    }
+
+    public enum Status {
+        OK, FAILED, TIMED_OUT, SKIPPED
+    }
+
+    /**
+     * One source's answer in a round. {@code latencyMs} is how long the source
+     * took, or was waited for; {@code receivedAt} is when its prices arrived
+     * (null unless {@code OK}).
+     */
+    public record SourceQuote(String source, Status status, Map<AssetType, BigDecimal> prices, long latencyMs,
+            Instant receivedAt, String error) {
+    }
+
+    /** Merged price of one asset (null without a quorum), with the sources that agreed and the outliers. */
+    public record Consensus(BigDecimal price, List<String> sources, List<String> outliers) {
+    }
+
+    public record Round(Instant completedAt, List<SourceQuote> quotes, Map<AssetType, Consensus> assets) {
+    }
+
+    private static final class Member {
+        final PriceSource source;
+        final String name;
+        final long deadlineNanos;
+        final AtomicBoolean inFlight = new AtomicBoolean();
+        volatile Thread runner;
+        final Timer succeeded;
+        final Timer failed;
+        final Timer timedOut;
+        final Counter skips;
+        final Counter outliers;
+
+        Member(Provider provider, MeterRegistry registry) {
+            this.source = provider.source();
+            this.name = source.name();
+            this.deadlineNanos = provider.deadline().toNanos();
+            this.succeeded = timer(registry, "ok");
+            this.failed = timer(registry, "failed");
+            this.timedOut = timer(registry, "timed_out");
+            this.skips = Counter.builder("pricing.source.skipped").tag("source", name).register(registry);
+            this.outliers = Counter.builder("pricing.source.outliers").tag("source", name).register(registry);
+        }
+
+        private Timer timer(MeterRegistry registry, String outcome) {
+            return Timer.builder("pricing.source.duration").tag("source", name).tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        }
+
+        /** Starts a fetch, or returns null if the previous one hasn't returned yet. */
+        CompletableFuture<SourceQuote> submit(ExecutorService executor) {
+            if (!inFlight.compareAndSet(false, true))
+                return null;
+            CompletableFuture<SourceQuote> result = new CompletableFuture<>();
+            try {
+                // execute, not submit: the task always runs, so it always clears inFlight
+                executor.execute(() -> result.complete(fetch()));
+            } catch (RuntimeException e) {
+                inFlight.set(false);
+                throw e;
+            }
+            return result;
+        }
+
+        private SourceQuote fetch() {
+            runner = Thread.currentThread();
+            long started = System.nanoTime();
+            try {
+                Map<AssetType, BigDecimal> prices = source.fetch();
+                long nanos = System.nanoTime() - started;
+                succeeded.record(nanos, TimeUnit.NANOSECONDS);
+                return new SourceQuote(name, Status.OK, Map.copyOf(prices), TimeUnit.NANOSECONDS.toMillis(nanos),
+                        Instant.now(), null);
+            } catch (Exception e) {
+                long nanos = System.nanoTime() - started;
+                failed.record(nanos, TimeUnit.NANOSECONDS);
+                return new SourceQuote(name, Status.FAILED, Map.of(), TimeUnit.NANOSECONDS.toMillis(nanos), null,
+                        e.toString());
+            } finally {
+                runner = null;
+                inFlight.set(false);
+            }
+        }
+
+        SourceQuote await(CompletableFuture<SourceQuote> future, long roundStarted) {
+            long remaining = deadlineNanos - (System.nanoTime() - roundStarted);
+            try {
+                return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // a fetch that ignores the interrupt stays in flight and is skipped next round
+                interrupt();
+                long waited = System.nanoTime() - roundStarted;
+                timedOut.record(waited, TimeUnit.NANOSECONDS);
+                return new SourceQuote(name, Status.TIMED_OUT, Map.of(), TimeUnit.NANOSECONDS.toMillis(waited), null,
+                        "no answer within " + Duration.ofNanos(deadlineNanos));
+            } catch (ExecutionException e) {
+                return new SourceQuote(name, Status.FAILED, Map.of(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - roundStarted), null, e.getCause().toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                interrupt();
+                return new SourceQuote(name, Status.FAILED, Map.of(), 0, null, "interrupted");
+            }
+        }
+
+        private void interrupt() {
+            Thread thread = runner;
+            if (thread != null)
+                thread.interrupt();
+        }
+
+        SourceQuote skipped() {
+            skips.increment();
+            return new SourceQuote(name, Status.SKIPPED, Map.of(), 0, null, "previous fetch still running");
+        }
+
+        void countOutliers(Map<AssetType, Consensus> assets) {
+            for (Consensus consensus : assets.values()) {
+                if (consensus.outliers().contains(name))
+                    outliers.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.coin.demo.pricing;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.coin.demo.domain.AssetType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Background refresh loop for live prices. Readers always get the last
+ * published {@link PriceSnapshot} without blocking; a stale map is served while
+ * a refresh runs on the refresher's own thread (stale-while-revalidate).
+ * Failed fetches are retried with exponential backoff and jitter.
+ *
+ * <p>Metrics, tagged with the source name: {@code pricing.fetch.duration} and
+ * {@code pricing.refresh} by outcome, {@code pricing.quotes} by asset,
+ * {@code pricing.age} and {@code pricing.consecutive.failures}.
+ */
+@Slf4j
+public class PriceRefresher implements AutoCloseable {
+
+    private final PriceSource source;
+    private final long refreshMs;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    private final Consumer<PriceSnapshot> onPublish;
+
+    private final Timer fetchSucceeded;
+    private final Timer fetchFailed;
+    private final Counter refreshSucceeded;
+    private final Counter refreshFailed;
+    private final Map<AssetType, Counter> quotes = new EnumMap<>(AssetType.class);
+
+    private final AtomicReference<PriceSnapshot> snapshot;
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long lastSuccessMs;
+    private volatile int consecutiveFailures;
+    // only touched from the scheduler thread
+    private ScheduledFuture<?> pending;
+
+    public PriceRefresher(PriceSource source, Map<AssetType, BigDecimal> seed, Duration refreshInterval,
+            Duration initialBackoff, Duration maxBackoff) {
+        this(source, seed, refreshInterval, initialBackoff, maxBackoff, published -> {
+        }, new SimpleMeterRegistry());
+    }
+
+    /** {@code onPublish} runs on the refresher thread after each successful fetch is published. */
+    public PriceRefresher(PriceSource source, Map<AssetType, BigDecimal> seed, Duration refreshInterval,
+            Duration initialBackoff, Duration maxBackoff, Consumer<PriceSnapshot> onPublish,
+            MeterRegistry registry) {
+        this.source = source;
+        this.onPublish = onPublish;
+        this.refreshMs = refreshInterval.toMillis();
+        this.initialBackoffMs = Math.max(1, initialBackoff.toMillis());
+        this.maxBackoffMs = Math.max(initialBackoffMs, maxBackoff.toMillis());
+        this.snapshot = new AtomicReference<>(new PriceSnapshot(0, Instant.now(), seed));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("price-refresh").daemon().factory());
+
+        String name = source.name();
+        this.fetchSucceeded = Timer.builder("pricing.fetch.duration").tag("source", name).tag("outcome", "success")
+                .publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.fetchFailed = Timer.builder("pricing.fetch.duration").tag("source", name).tag("outcome", "failure")
+                .publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.refreshSucceeded = Counter.builder("pricing.refresh").tag("source", name).tag("outcome", "success")
+                .register(registry);
+        this.refreshFailed = Counter.builder("pricing.refresh").tag("source", name).tag("outcome", "failure")
+                .register(registry);
+        for (AssetType type : AssetType.values()) {
+            quotes.put(type, Counter.builder("pricing.quotes").tag("source", name).tag("asset", type.name())
+                    .register(registry));
+        }
+        Gauge.builder("pricing.age", this, r -> r.lastSuccessMs == 0 ? Double.NaN
+                : (System.currentTimeMillis() - r.lastSuccessMs) / 1000.0)
+                .tag("source", name).baseUnit("seconds").register(registry);
+        Gauge.builder("pricing.consecutive.failures", this, PriceRefresher::consecutiveFailures)
+                .tag("source", name).register(registry);
+    }
+
+    /** Kicks off the first fetch immediately; subsequent fetches schedule themselves. */
+    public void start() {
+        trigger();
+    }
+
+    public PriceSnapshot current() {
+        return snapshot.get();
+    }
+
+    public boolean isStale() {
+        return System.currentTimeMillis() - lastSuccessMs >= refreshMs;
+    }
+
+    /** Requests a background refresh if the prices are stale. Never blocks the caller. */
+    public void revalidateIfStale() {
+        if (isStale())
+            trigger();
+    }
+
+    public long lastSuccessMs() {
+        return lastSuccessMs;
+    }
+
+    public int consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private void trigger() {
+        if (inFlight.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::refresh);
+            } catch (RuntimeException e) {
+                // scheduler shut down
+                inFlight.set(false);
+            }
+        }
+    }
+
+    private void refresh() {
+        long nextDelay;
+        long started = System.nanoTime();
+        Map<AssetType, BigDecimal> fetched = null;
+        try {
+            fetched = source.fetch();
+            fetchSucceeded.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            // single writer: only this thread publishes, so get-then-set cannot lose a version
+            PriceSnapshot published = snapshot.get().merge(fetched, Instant.now());
+            snapshot.set(published);
+            lastSuccessMs = System.currentTimeMillis();
+            consecutiveFailures = 0;
+            nextDelay = refreshMs;
+            refreshSucceeded.increment();
+            fetched.keySet().forEach(type -> quotes.get(type).increment());
+            notifyPublished(published);
+        } catch (Exception e) {
+            if (fetched == null)
+                fetchFailed.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            refreshFailed.increment();
+            int failures = ++consecutiveFailures;
+            nextDelay = backoffMs(failures);
+            log.warn("Price refresh from {} failed ({} in a row), retrying in {} ms: {}", source.name(), failures,
+                    nextDelay, e.toString());
+        } finally {
+            inFlight.set(false);
+        }
+        scheduleNext(nextDelay);
+    }
+
+    private void notifyPublished(PriceSnapshot published) {
+        try {
+            onPublish.accept(published);
+        } catch (RuntimeException e) {
+            log.warn("Price publish listener failed for version {}: {}", published.version(), e.toString());
+        }
+    }
+
+    private void scheduleNext(long delayMs) {
+        if (pending != null)
+            pending.cancel(false);
+        if (scheduler.isShutdown())
+            return;
+        pending = scheduler.schedule(() -> {
+            if (inFlight.compareAndSet(false, true))
+                refresh();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Exponential backoff with "equal jitter": half fixed, half random. */
+    long backoffMs(int failures) {
+        int shift = Math.min(failures - 1, 30);
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << shift);
+        long half = Math.max(1, cap / 2);
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,45 @@
+package com.coin.demo.pricing;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.CostCurrency;
+
+/**
+ * Immutable, versioned set of unit prices in toman. A computation takes one
+ * snapshot and prices everything against it, so it never mixes rates from two
+ * refreshes. The version increases by one with every published snapshot.
+ * Snapshots reconstructed from price history for a past instant carry
+ * {@link #HISTORICAL_VERSION} and that instant as {@code fetchedAt}.
+ */
+public record PriceSnapshot(long version, Instant fetchedAt, Map<AssetType, BigDecimal> prices) {
+
+    public static final long HISTORICAL_VERSION = -1;
+
+    public PriceSnapshot {
+        Map<AssetType, BigDecimal> copy = new EnumMap<>(AssetType.class);
+        copy.putAll(prices);
+        prices = Collections.unmodifiableMap(copy);
+    }
+
+    public BigDecimal unitPriceToman(AssetType type) {
+        return prices.get(type);
+    }
+
+    /** Toman value of one unit of the given payment currency. */
+    public BigDecimal tomanPer(CostCurrency currency) {
+        return currency.fxAsset() == null ? BigDecimal.ONE : prices.get(currency.fxAsset());
+    }
+
+    /** Next version with the given quotes merged over this snapshot's prices. */
+    public PriceSnapshot merge(Map<AssetType, BigDecimal> quotes, Instant fetchedAt) {
+        Map<AssetType, BigDecimal> merged = new EnumMap<>(AssetType.class);
+        merged.putAll(prices);
+        merged.putAll(quotes);
+        return new PriceSnapshot(version + 1, fetchedAt, merged);
+    }
+}
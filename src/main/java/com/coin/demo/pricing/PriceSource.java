@@ -0,0 +1,18 @@
+package com.coin.demo.pricing;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import com.coin.demo.domain.AssetType;
+
+/**
+ * A provider of live unit prices in toman. Sources may return only the assets
+ * they know about; anything missing keeps its previous value.
+ */
+public interface PriceSource {
+
+    String name();
+
+    Map<AssetType, BigDecimal> fetch() throws IOException;
+}
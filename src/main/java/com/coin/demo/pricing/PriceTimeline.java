@@ -0,0 +1,150 @@
+package com.coin.demo.pricing;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.coin.demo.domain.AssetType;
+
+/**
+ * In-memory price history for as-of lookups: per asset, parallel sorted arrays
+ * of observation times (epoch millis) and unit prices in toman as longs at
+ * {@link #SCALE} decimals, searched with a binary search. Prices are a step
+ * function: the price at {@code t} is the last observation at or before
+ * {@code t}; before the first observation the first one is used.
+ *
+ * <p>One writer appends in time order; readers never lock. Appends write past
+ * the published size and then publish a new size, so a reader's view of a
+ * series never changes under it.
+ */
+public final class PriceTimeline {
+
+    public static final int SCALE = 6;
+    /** Returned by {@link #scaledPriceAt} when the asset has no history. */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final AssetType[] ASSETS = AssetType.values();
+    private static final Series EMPTY = new Series(new long[0], new long[0], 0);
+
+    private final AtomicReferenceArray<Series> series = new AtomicReferenceArray<>(ASSETS.length);
+
+    public PriceTimeline() {
+        for (int i = 0; i < ASSETS.length; i++)
+            series.set(i, EMPTY);
+    }
+
+    /**
+     * Appends an observation. Returns false, leaving the timeline unchanged, if
+     * it is not later than the asset's last observation.
+     */
+    public synchronized boolean append(AssetType type, Instant at, BigDecimal price) {
+        Series s = series.get(type.ordinal());
+        long time = at.toEpochMilli();
+        if (s.size > 0 && time <= s.times[s.size - 1])
+            return false;
+        long[] times = s.times;
+        long[] prices = s.prices;
+        if (s.size == times.length) {
+            int capacity = Math.max(16, times.length * 2);
+            times = Arrays.copyOf(times, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+        }
+        times[s.size] = time;
+        prices[s.size] = toScaled(price);
+        series.set(type.ordinal(), new Series(times, prices, s.size + 1));
+        return true;
+    }
+
+    /** Latest observed price of the asset, or null if it has none. */
+    public BigDecimal latest(AssetType type) {
+        Series s = series.get(type.ordinal());
+        return s.size == 0 ? null : BigDecimal.valueOf(s.prices[s.size - 1], SCALE);
+    }
+
+    /** Unit price in toman at {@code at}, or null if the asset has no history. */
+    public BigDecimal priceAt(AssetType type, Instant at) {
+        long scaled = scaledPriceAt(type, at.toEpochMilli());
+        return scaled == NONE ? null : BigDecimal.valueOf(scaled, SCALE);
+    }
+
+    /** Allocation-free variant of {@link #priceAt}: the price at {@link #SCALE} decimals, or {@link #NONE}. */
+    public long scaledPriceAt(AssetType type, long epochMillis) {
+        Series s = series.get(type.ordinal());
+        if (s.size == 0)
+            return NONE;
+        int i = Arrays.binarySearch(s.times, 0, s.size, epochMillis);
+        // exact hit, else the insertion point minus one (the last earlier observation)
+        int index = i >= 0 ? i : Math.max(0, -i - 2);
+        return s.prices[index];
+    }
+
+    /**
+     * Prices as of {@code asOf}. Assets without history take their price from
+     * {@code fallback}. The snapshot carries {@link PriceSnapshot#HISTORICAL_VERSION}.
+     */
+    public PriceSnapshot snapshotAt(Instant asOf, PriceSnapshot fallback) {
+        Map<AssetType, BigDecimal> prices = new EnumMap<>(AssetType.class);
+        for (AssetType type : ASSETS) {
+            BigDecimal price = priceAt(type, asOf);
+            BigDecimal p = price != null ? price : fallback.unitPriceToman(type);
+            if (p != null)
+                prices.put(type, p);
+        }
+        return new PriceSnapshot(PriceSnapshot.HISTORICAL_VERSION, asOf, prices);
+    }
+
+    public int size(AssetType type) {
+        return series.get(type.ordinal()).size;
+    }
+
+    /** Forward-only reader for walking many increasing timestamps in one pass. */
+    public Cursor cursor() {
+        Series[] view = new Series[ASSETS.length];
+        for (int i = 0; i < view.length; i++)
+            view[i] = series.get(i);
+        return new Cursor(view);
+    }
+
+    static long toScaled(BigDecimal price) {
+        return price.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private record Series(long[] times, long[] prices, int size) {
+    }
+
+    /**
+     * Prices at a moving point in time. Each {@link #advanceTo} only moves
+     * forward, so replaying N timestamps costs O(N + observations) overall.
+     */
+    public static final class Cursor {
+        private final Series[] view;
+        private final int[] index;
+
+        private Cursor(Series[] view) {
+            this.view = view;
+            this.index = new int[view.length];
+        }
+
+        public Cursor advanceTo(Instant at) {
+            long time = at.toEpochMilli();
+            for (int a = 0; a < view.length; a++) {
+                Series s = view[a];
+                int i = index[a];
+                while (i + 1 < s.size && s.times[i + 1] <= time)
+                    i++;
+                index[a] = i;
+            }
+            return this;
+        }
+
+        /** Price at the current position, or null if the asset has no history. */
+        public BigDecimal price(AssetType type) {
+            Series s = view[type.ordinal()];
+            return s.size == 0 ? null : BigDecimal.valueOf(s.prices[index[type.ordinal()]], SCALE);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.coin.demo.pricing;
+
+/** Published on the refresher thread each time a new price snapshot goes live. */
+public record PricesPublishedEvent(PriceSnapshot prices) {
+}
@@ -0,0 +1,35 @@
+package com.coin.demo.pricing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import com.coin.demo.pricing.PriceAggregator.Provider;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The price source the refresher polls: alanchand plus any configured JSON
+ * sources, queried together and merged by {@link PriceAggregator}.
+ */
+@Configuration
+public class PricingConfiguration {
+
+    @Bean
+    @Primary
+    PriceAggregator priceAggregator(AlanchandPriceSource alanchand, ConsensusProperties properties,
+            MeterRegistry registry) {
+        List<Provider> providers = new ArrayList<>();
+        providers.add(new Provider(alanchand, properties.getDeadline()));
+        properties.getJson().forEach((name, json) -> {
+            Duration deadline = json.getDeadline() == null ? properties.getDeadline() : json.getDeadline();
+            providers.add(new Provider(new JsonPriceSource(name, json.getUrl(), json.getAssets(), json.getScale(),
+                    deadline), deadline));
+        });
+        return new PriceAggregator(providers, properties.getQuorum(), properties.getMaxDeviation(), registry);
+    }
+}
@@ -0,0 +1,22 @@
+package com.coin.demo.repository;
+
+import java.math.BigDecimal;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.OperationType;
+
+/**
+ * Sum of quantities and total prices for one asset and operation type,
+ * aggregated in the database.
+ */
+public record AssetFlowTotal(AssetType type, OperationType operationType, BigDecimal amount, BigDecimal price,
+        Long trades) {
+
+    public BigDecimal signedAmount() {
+        return operationType == OperationType.BUY ? amount : amount.negate();
+    }
+
+    public BigDecimal signedPrice() {
+        return operationType == OperationType.BUY ? price : price.negate();
+    }
+}
@@ -1,18 +1,90 @@
 package com.coin.demo.repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import com.coin.demo.domain.Investment;
 
+import jakarta.persistence.QueryHint;
+
 public interface InvestmentRepository extends JpaRepository<Investment, Long> {
     List<Investment> findByUserId(Long userId);
 
+    @Query("select i.id from Investment i where i.userId = :userId and i.idempotencyKey = :key")
+    Optional<Long> findIdByIdempotencyKey(@Param("userId") Long userId, @Param("key") String key);
+
+    /** {@code userId:key} of the given keys that are already stored, for any user. */
+    @Query("select concat(cast(i.userId as String), ':', i.idempotencyKey) from Investment i "
+            + "where i.idempotencyKey in :keys")
+    List<String> findStoredIdempotencyKeys(@Param("keys") Collection<String> keys);
+
     List<Investment> findByUserIdAndDateBetween(Long userId, Instant start, Instant end);
 
     Page<Investment> findByUserId(Long userId, Pageable pageable);
+
+    boolean existsByUserId(Long userId);
+
+    /** Distinct owners in id order, a page at a time; reads the {@code (userId, date)} index. */
+    @Query("select distinct i.userId from Investment i where i.userId > :after order by i.userId")
+    List<Long> findUserIdsAfter(@Param("after") Long after, Limit limit);
+
+    /** Newest trades first; the first page of {@link #findPageBefore}. */
+    @Query("select i from Investment i where i.userId = :userId order by i.date desc, i.id desc")
+    List<Investment> findFirstPage(@Param("userId") Long userId, Limit limit);
+
+    /**
+     * Keyset page: the trades strictly after {@code (date, id)} in newest-first
+     * order. Seeks on the {@code (userId, date)} index instead of counting and
+     * skipping rows like an OFFSET page.
+     */
+    @Query("select i from Investment i where i.userId = :userId "
+            + "and (i.date < :date or (i.date = :date and i.id < :id)) order by i.date desc, i.id desc")
+    List<Investment> findPageBefore(@Param("userId") Long userId, @Param("date") Instant date,
+            @Param("id") Long id, Limit limit);
+
+    /** Full history oldest first, read through a cursor; must be consumed inside a transaction and closed. */
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+    @Query("select i from Investment i where i.userId = :userId order by i.date, i.id")
+    Stream<Investment> streamByUserId(@Param("userId") Long userId);
+
+    @Query("select new com.coin.demo.repository.AssetFlowTotal(i.type, i.operationType, sum(i.amount), sum(i.price), count(i)) "
+            + "from Investment i where i.userId = :userId group by i.type, i.operationType")
+    List<AssetFlowTotal> sumFlowsByUserId(@Param("userId") Long userId);
+
+    @Query("select new com.coin.demo.repository.PositionTotal(i.type, i.operationType, upper(i.currency), sum(i.amount), sum(i.price), count(i)) "
+            + "from Investment i where i.userId = :userId group by i.type, i.operationType, upper(i.currency)")
+    List<PositionTotal> sumPositionsByUserId(@Param("userId") Long userId);
+
+    /**
+     * {@link #sumPositionsByUserId} for every user in one pass, ordered by user
+     * so each user's rows arrive together; read through a cursor inside a transaction.
+     */
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+    @Query("select new com.coin.demo.repository.UserPositionTotal(i.userId, i.type, i.operationType, upper(i.currency), sum(i.amount), sum(i.price), count(i)) "
+            + "from Investment i group by i.userId, i.type, i.operationType, upper(i.currency) order by i.userId")
+    Stream<UserPositionTotal> streamPositionTotalsByUser();
+
+    /** {@link #sumPositionsByUserId} restricted to trades dated at or before {@code asOf}. */
+    @Query("select new com.coin.demo.repository.PositionTotal(i.type, i.operationType, upper(i.currency), sum(i.amount), sum(i.price), count(i)) "
+            + "from Investment i where i.userId = :userId and i.date <= :asOf group by i.type, i.operationType, upper(i.currency)")
+    List<PositionTotal> sumPositionsByUserIdAsOf(@Param("userId") Long userId, @Param("asOf") Instant asOf);
+
+    /** {@link #sumFlowsByUserId} restricted to trades dated at or before {@code asOf}. */
+    @Query("select new com.coin.demo.repository.AssetFlowTotal(i.type, i.operationType, sum(i.amount), sum(i.price), count(i)) "
+            + "from Investment i where i.userId = :userId and i.date <= :asOf group by i.type, i.operationType")
+    List<AssetFlowTotal> sumFlowsByUserIdAsOf(@Param("userId") Long userId, @Param("asOf") Instant asOf);
 }
@@ -0,0 +1,8 @@
+package com.coin.demo.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.coin.demo.domain.JournalCheckpoint;
+
+public interface JournalCheckpointRepository extends JpaRepository<JournalCheckpoint, Long> {
+}
@@ -0,0 +1,8 @@
+package com.coin.demo.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.coin.demo.domain.JournalDeadLetter;
+
+public interface JournalDeadLetterRepository extends JpaRepository<JournalDeadLetter, Long> {
+}
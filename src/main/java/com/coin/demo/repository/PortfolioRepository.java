@@ -1,11 +1,27 @@
 package com.coin.demo.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.coin.demo.domain.Portfolio;
 
+import jakarta.persistence.LockModeType;
+
 public interface PortfolioRepository extends JpaRepository<Portfolio, Long> {
     Optional<Portfolio> findByUserId(Long userId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Portfolio p where p.userId = :userId")
+    Optional<Portfolio> findForUpdateByUserId(@Param("userId") Long userId);
+
+    /** Ledger balances of many users in one query, without loading the entities and their collections. */
+    @Query("select new com.coin.demo.repository.UserBalance(p.userId, key(b), value(b)) "
+            + "from Portfolio p join p.assetBalances b where p.userId in :userIds")
+    List<UserBalance> findBalancesByUserIdIn(@Param("userIds") Collection<Long> userIds);
 }
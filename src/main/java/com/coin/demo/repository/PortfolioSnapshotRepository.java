@@ -1,14 +1,26 @@
 package com.coin.demo.repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.coin.demo.domain.PortfolioSnapshot;
 
 public interface PortfolioSnapshotRepository extends JpaRepository<PortfolioSnapshot, Long> {
     List<PortfolioSnapshot> findByUserIdAndCreatedAtBetweenOrderByCreatedAtAsc(Long userId, Instant start, Instant end);
+
+    long countByUserIdAndCreatedAtBetween(Long userId, Instant start, Instant end);
+
+    @Query("select s from PortfolioSnapshot s where s.userId = :userId order by s.createdAt")
+    Stream<PortfolioSnapshot> streamByUserId(@Param("userId") Long userId);
+
+    @Query("select s.userId from PortfolioSnapshot s where s.runId = :runId and s.userId in :userIds")
+    List<Long> findUserIdsByRunId(@Param("runId") Long runId, @Param("userIds") Collection<Long> userIds);
 }
 
 
@@ -0,0 +1,38 @@
+package com.coin.demo.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.coin.demo.domain.PortfolioSnapshotRollup;
+import com.coin.demo.domain.RollupResolution;
+
+import jakarta.persistence.LockModeType;
+
+public interface PortfolioSnapshotRollupRepository extends JpaRepository<PortfolioSnapshotRollup, Long> {
+    List<PortfolioSnapshotRollup> findByResolutionAndBucketStartAndUserIdIn(RollupResolution resolution,
+            Instant bucketStart, Collection<Long> userIds);
+
+    /** Locks the rows in user-id order, so two writers locking overlapping users can't deadlock. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from PortfolioSnapshotRollup r where r.resolution = :resolution "
+            + "and r.bucketStart = :bucketStart and r.userId in :userIds order by r.userId")
+    List<PortfolioSnapshotRollup> findForUpdate(@Param("resolution") RollupResolution resolution,
+            @Param("bucketStart") Instant bucketStart, @Param("userIds") Collection<Long> userIds);
+
+    long countByUserIdAndResolutionAndBucketStartBetweenAndSamplesGreaterThan(Long userId,
+            RollupResolution resolution, Instant start, Instant end, long samples);
+
+    List<PortfolioSnapshotRollup> findByUserIdAndResolutionAndBucketStartBetweenAndSamplesGreaterThanOrderByBucketStartAsc(
+            Long userId, RollupResolution resolution, Instant start, Instant end, long samples);
+
+    @Modifying
+    @Query("delete from PortfolioSnapshotRollup r where r.userId = :userId")
+    void deleteByUserId(@Param("userId") Long userId);
+}
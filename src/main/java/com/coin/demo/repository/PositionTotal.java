@@ -0,0 +1,27 @@
+package com.coin.demo.repository;
+
+import java.math.BigDecimal;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.CostCurrency;
+import com.coin.demo.domain.OperationType;
+
+/**
+ * Like {@link AssetFlowTotal} but additionally bucketed by the (upper-cased)
+ * payment currency, so cost can be converted to toman per currency.
+ */
+public record PositionTotal(AssetType type, OperationType operationType, String currency, BigDecimal amount,
+        BigDecimal price, Long trades) {
+
+    public CostCurrency costCurrency() {
+        return CostCurrency.of(currency);
+    }
+
+    public BigDecimal signedAmount() {
+        return operationType == OperationType.BUY ? amount : amount.negate();
+    }
+
+    public BigDecimal signedPrice() {
+        return operationType == OperationType.BUY ? price : price.negate();
+    }
+}
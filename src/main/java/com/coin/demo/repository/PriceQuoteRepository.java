@@ -0,0 +1,19 @@
+package com.coin.demo.repository;
+
+import java.util.stream.Stream;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.hibernate.jpa.HibernateHints;
+
+import com.coin.demo.domain.PriceQuote;
+
+import jakarta.persistence.QueryHint;
+
+public interface PriceQuoteRepository extends JpaRepository<PriceQuote, Long> {
+    @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+    @Query("select q from PriceQuote q order by q.observedAt, q.id")
+    Stream<PriceQuote> streamAllInOrder();
+}
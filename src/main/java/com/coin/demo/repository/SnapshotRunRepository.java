@@ -0,0 +1,22 @@
+package com.coin.demo.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.coin.demo.domain.SnapshotRun;
+
+public interface SnapshotRunRepository extends JpaRepository<SnapshotRun, Long> {
+    Optional<SnapshotRun> findFirstByStatusOrderByIdDesc(SnapshotRun.Status status);
+
+    @Transactional
+    @Modifying
+    @Query("update SnapshotRun r set r.checkpointUserId = :checkpoint, r.usersProcessed = :users, "
+            + "r.rowsWritten = :rows where r.id = :id")
+    void updateCheckpoint(@Param("id") Long id, @Param("checkpoint") long checkpoint, @Param("users") long users,
+            @Param("rows") long rows);
+}
@@ -0,0 +1,9 @@
+package com.coin.demo.repository;
+
+import java.math.BigDecimal;
+
+import com.coin.demo.domain.AssetType;
+
+/** One asset balance of one user's position ledger. */
+public record UserBalance(Long userId, AssetType type, BigDecimal amount) {
+}
@@ -0,0 +1,15 @@
+package com.coin.demo.repository;
+
+import java.math.BigDecimal;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.OperationType;
+
+/** A {@link PositionTotal} row of one user, from an aggregate over many users. */
+public record UserPositionTotal(Long userId, AssetType type, OperationType operationType, String currency,
+        BigDecimal amount, BigDecimal price, Long trades) {
+
+    public PositionTotal total() {
+        return new PositionTotal(type, operationType, currency, amount, price, trades);
+    }
+}
@@ -0,0 +1,256 @@
+package com.coin.demo.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.repository.PositionTotal;
+import com.coin.demo.repository.UserPositionTotal;
+import com.coin.demo.service.ValuationService.ValuationSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Valuation of every user against one {@link PriceSnapshot}, for reporting.
+ * The trade history is read once, as per-user aggregates ordered by user id;
+ * the reading thread cuts them into chunks of users that a ForkJoin pool
+ * values while the next chunk is being read. Only a few chunks are in flight
+ * and results come back in user-id order, so memory is bounded by that window
+ * rather than by the number of users.
+ *
+ * <p>Rankings keep just the best {@code limit} rows seen so far.
+ */
+@Service
+public class BulkValuationService {
+
+    /** Chunks are split in halves down to this many users per task. */
+    private static final int LEAF_USERS = 64;
+
+    private final InvestmentRepository investmentRepository;
+    private final ValuationMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int window;
+
+    private final Timer duration;
+    private final Counter usersCounter;
+
+    public BulkValuationService(InvestmentRepository investmentRepository, ValuationMetrics metrics,
+            ObjectMapper objectMapper, MeterRegistry registry,
+            @Value("${valuation.bulk.parallelism:4}") int parallelism,
+            @Value("${valuation.bulk.chunk-size:1000}") int chunkSize) {
+        this.investmentRepository = investmentRepository;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), BulkValuationService::worker, null, false);
+        this.chunkSize = Math.max(1, chunkSize);
+        // bounds how far the reader runs ahead of the workers
+        this.window = Math.max(1, parallelism) * 2;
+        this.duration = Timer.builder("valuation.bulk.duration").register(registry);
+        this.usersCounter = Counter.builder("valuation.bulk.users").register(registry);
+    }
+
+    /**
+     * Hands every user's valuation to {@code sink} in user-id order, on the
+     * calling thread. Returns the number of users.
+     */
+    @Transactional(readOnly = true)
+    public long forEach(PriceSnapshot prices, Consumer<UserValuation> sink) {
+        return scan(prices, sink);
+    }
+
+    /** The {@code limit} best users by {@code ranking}, best first, or worst first if {@code ascending}. */
+    @Transactional(readOnly = true)
+    public List<UserValuation> top(PriceSnapshot prices, Ranking ranking, boolean ascending, int limit) {
+        Comparator<UserValuation> key = ascending ? ranking.key.reversed() : ranking.key;
+        // equal keys: lower user id ranks first
+        TopN<UserValuation> top = new TopN<>(key.thenComparing(UserValuation::userId, Comparator.reverseOrder()),
+                limit);
+        scan(prices, top);
+        return top.sorted();
+    }
+
+    /** Writes every user's valuation as one JSON object per line, in user-id order; returns the number of users. */
+    @Transactional(readOnly = true)
+    public long exportNdjson(PriceSnapshot prices, OutputStream out) throws IOException {
+        try (NdjsonWriter<UserValuation> ndjson = new NdjsonWriter<>(objectMapper, UserValuation.class, out)) {
+            return scan(prices, row -> {
+                try {
+                    ndjson.write(row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        pool.shutdownNow();
+    }
+
+    private long scan(PriceSnapshot prices, Consumer<UserValuation> sink) {
+        long startNanos = System.nanoTime();
+        Deque<ValueTask> inFlight = new ArrayDeque<>();
+        long users = 0;
+        try (Stream<UserPositionTotal> rows = investmentRepository.streamPositionTotalsByUser()) {
+            List<UserTotals> chunk = new ArrayList<>(chunkSize);
+            UserTotals current = null;
+            for (UserPositionTotal row : (Iterable<UserPositionTotal>) rows::iterator) {
+                if (current == null || !current.userId().equals(row.userId())) {
+                    if (current != null && chunk.size() == chunkSize) {
+                        inFlight.add(submit(chunk, prices));
+                        chunk = new ArrayList<>(chunkSize);
+                        if (inFlight.size() > window)
+                            users += drain(inFlight.poll(), sink);
+                    }
+                    current = new UserTotals(row.userId(), new ArrayList<>());
+                    chunk.add(current);
+                }
+                current.totals().add(row.total());
+            }
+            if (!chunk.isEmpty())
+                inFlight.add(submit(chunk, prices));
+            while (!inFlight.isEmpty())
+                users += drain(inFlight.poll(), sink);
+            return users;
+        } finally {
+            // only non-empty when the reader or the sink failed
+            inFlight.forEach(task -> task.cancel(false));
+            usersCounter.increment(users);
+            duration.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ValueTask submit(List<UserTotals> chunk, PriceSnapshot prices) {
+        ValueTask task = new ValueTask(chunk, new UserValuation[chunk.size()], 0, chunk.size(), prices);
+        pool.execute(task);
+        return task;
+    }
+
+    private static int drain(ValueTask task, Consumer<UserValuation> sink) {
+        task.join();
+        for (UserValuation row : task.out)
+            sink.accept(row);
+        return task.out.length;
+    }
+
+    private static ForkJoinWorkerThread worker(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("bulk-valuation-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    private UserValuation value(UserTotals user, PriceSnapshot prices) {
+        for (PositionTotal t : user.totals())
+            metrics.tradesScanned(ValuationMetrics.BULK, t.type(), t.trades());
+        ValuationSummary summary = ValuationService.fromTotals(user.totals(), prices);
+        return new UserValuation(user.userId(), summary.initialToman(), summary.currentToman(), summary.roiPercent());
+    }
+
+    /** Values {@code users[from, to)} into the same slots of {@code out}, forking halves until they are small. */
+    private final class ValueTask extends RecursiveAction {
+        private final List<UserTotals> users;
+        private final UserValuation[] out;
+        private final int from;
+        private final int to;
+        private final PriceSnapshot prices;
+
+        ValueTask(List<UserTotals> users, UserValuation[] out, int from, int to, PriceSnapshot prices) {
+            this.users = users;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.prices = prices;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_USERS) {
+                for (int i = from; i < to; i++)
+                    out[i] = value(users.get(i), prices);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ValueTask(users, out, from, mid, prices), new ValueTask(users, out, mid, to, prices));
+        }
+    }
+
+    private record UserTotals(Long userId, List<PositionTotal> totals) {
+    }
+
+    /**
+     * Bounded selection of the greatest rows under {@code order}: a min-heap of
+     * at most {@code limit} rows whose head is the weakest one kept.
+     */
+    static final class TopN<T> implements Consumer<T> {
+        private final Comparator<? super T> order;
+        private final int limit;
+        private final PriorityQueue<T> kept;
+
+        TopN(Comparator<? super T> order, int limit) {
+            this.order = order;
+            this.limit = Math.max(1, limit);
+            this.kept = new PriorityQueue<>(Math.min(this.limit, 1024), order);
+        }
+
+        @Override
+        public void accept(T row) {
+            if (kept.size() < limit) {
+                kept.add(row);
+            } else if (order.compare(row, kept.peek()) > 0) {
+                kept.poll();
+                kept.add(row);
+            }
+        }
+
+        /** Kept rows, greatest first. */
+        List<T> sorted() {
+            List<T> out = new ArrayList<>(kept);
+            out.sort(order.reversed());
+            return out;
+        }
+    }
+
+    public enum Ranking {
+        ROI(Comparator.comparing(UserValuation::roiPercent)),
+        VALUE(Comparator.comparing(UserValuation::currentToman));
+
+        private final Comparator<UserValuation> key;
+
+        Ranking(Comparator<UserValuation> key) {
+            this.key = key;
+        }
+    }
+
+    /** One user's valuation totals; the price snapshot is shared by the whole report. */
+    public record UserValuation(Long userId, BigDecimal initialToman, BigDecimal currentToman,
+            BigDecimal roiPercent) {
+    }
+}
@@ -0,0 +1,66 @@
+package com.coin.demo.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Rendered chart images keyed by data fingerprint. Bounded by total bytes,
+ * counting each image's whole render buffer, and evicted least-recently-used
+ * first.
+ */
+@Component
+public class ChartCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, ChartImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public ChartCache(@Value("${chart.cache.max-bytes:16777216}") long maxBytes, MeterRegistry registry) {
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("chart.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("chart.cache.requests").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("chart.cache.evictions").register(registry);
+        Gauge.builder("chart.cache.size", this, ChartCache::size).baseUnit("bytes").register(registry);
+        Gauge.builder("chart.cache.entries", this, ChartCache::count).register(registry);
+    }
+
+    /** The cached image for {@code key}, or null on a miss. */
+    public synchronized ChartImage get(String key) {
+        ChartImage cached = entries.get(key);
+        (cached != null ? hits : misses).increment();
+        return cached;
+    }
+
+    public synchronized void put(String key, ChartImage image) {
+        if (image.footprint() > maxBytes)
+            return;
+        ChartImage previous = entries.put(key, image);
+        bytes += image.footprint() - (previous == null ? 0 : previous.footprint());
+        Iterator<Map.Entry<String, ChartImage>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().footprint();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    synchronized double size() {
+        return bytes;
+    }
+
+    synchronized double count() {
+        return entries.size();
+    }
+}
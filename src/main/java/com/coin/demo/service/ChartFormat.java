@@ -0,0 +1,16 @@
+package com.coin.demo.service;
+
+public enum ChartFormat {
+    PNG("png"),
+    SVG("svg");
+
+    private final String extension;
+
+    ChartFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+}
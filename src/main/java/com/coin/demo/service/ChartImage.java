@@ -0,0 +1,60 @@
+package com.coin.demo.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An encoded chart, kept in the buffer it was rendered into. It is written
+ * out, and cached, without copying the bytes into another array.
+ */
+public final class ChartImage {
+
+    /** Room for a typical 800x600 pie chart in either format, so the buffer rarely grows. */
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final Buffer buffer;
+
+    private ChartImage(Buffer buffer) {
+        this.buffer = buffer;
+    }
+
+    static ChartImage encode(Encoder encoder) throws IOException {
+        Buffer buffer = new Buffer();
+        encoder.encode(buffer);
+        return new ChartImage(buffer);
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        buffer.writeTo(out);
+    }
+
+    /** A copy of the bytes, for callers that have to hold on to an array. */
+    public byte[] toByteArray() {
+        return buffer.toByteArray();
+    }
+
+    /** Bytes held, including the buffer's unused tail; what the cache accounts for. */
+    long footprint() {
+        return buffer.capacity();
+    }
+
+    @FunctionalInterface
+    interface Encoder {
+        void encode(OutputStream out) throws IOException;
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(INITIAL_CAPACITY);
+        }
+
+        synchronized int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.coin.demo.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Dedicated pool for CPU-heavy chart rendering, so bursts of chart requests
+ * can't occupy every request thread and core. Concurrency and queue length
+ * are capped; when the queue is full callers get a
+ * {@link ChartRenderRejectedException} immediately. Concurrent requests for
+ * the same key share one render.
+ */
+@Component
+public class ChartRenderExecutor {
+
+    private final ThreadPoolExecutor pool;
+    private final long timeoutMs;
+    private final ConcurrentHashMap<String, CompletableFuture<ChartImage>> inFlight = new ConcurrentHashMap<>();
+
+    private final Timer waitTimer;
+    private final Timer renderTimer;
+    private final Counter rejected;
+    private final Counter coalesced;
+
+    public ChartRenderExecutor(
+            @Value("${chart.render.threads:0}") int threads,
+            @Value("${chart.render.queue-capacity:16}") int queueCapacity,
+            @Value("${chart.render.timeout-ms:10000}") long timeoutMs,
+            MeterRegistry registry) {
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.pool = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("chart-render-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMs = timeoutMs;
+        this.waitTimer = Timer.builder("chart.render.wait").publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.renderTimer = Timer.builder("chart.render.duration").publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+        this.rejected = Counter.builder("chart.render.rejected").register(registry);
+        this.coalesced = Counter.builder("chart.render.coalesced").register(registry);
+        Gauge.builder("chart.render.queue.depth", pool, p -> p.getQueue().size()).register(registry);
+        Gauge.builder("chart.render.active", pool, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    /**
+     * Runs {@code renderer} on the pool, or joins the render already queued or
+     * running for the same key. The returned future fails with a
+     * {@link ChartRenderRejectedException} after the timeout; the render
+     * itself carries on and completes for anyone else waiting on it.
+     *
+     * @throws ChartRenderRejectedException if the queue is full
+     */
+    public CompletableFuture<ChartImage> render(String key, Supplier<ChartImage> renderer) {
+        boolean[] submitted = { false };
+        CompletableFuture<ChartImage> future = inFlight.computeIfAbsent(key, k -> {
+            submitted[0] = true;
+            return submit(renderer);
+        });
+        if (submitted[0]) {
+            future.whenComplete((image, error) -> inFlight.remove(key, future));
+        } else {
+            coalesced.increment();
+        }
+        // the timeout goes on a copy, so it never completes the shared future
+        return future.copy().orTimeout(timeoutMs, TimeUnit.MILLISECONDS).handle((image, error) -> {
+            if (error == null)
+                return image;
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                    : error;
+            if (cause instanceof TimeoutException)
+                throw new ChartRenderRejectedException("Chart rendering timed out");
+            if (cause instanceof RuntimeException re)
+                throw re;
+            throw new IllegalStateException("Chart rendering failed", cause);
+        });
+    }
+
+    private CompletableFuture<ChartImage> submit(Supplier<ChartImage> renderer) {
+        long queuedAt = System.nanoTime();
+        CompletableFuture<ChartImage> future = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    future.complete(renderer.get());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    renderTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ChartRenderRejectedException("Chart renderer is busy, try again shortly");
+        }
+        return future;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,12 @@
+package com.coin.demo.service;
+
+/**
+ * Thrown when the chart rendering pool is saturated (or a render took too
+ * long); callers should ask the client to retry shortly.
+ */
+public class ChartRenderRejectedException extends RuntimeException {
+
+    public ChartRenderRejectedException(String message) {
+        super(message);
+    }
+}
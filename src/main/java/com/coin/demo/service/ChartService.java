@@ -1,31 +1,137 @@
 package com.coin.demo.service;
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
-import java.io.File;
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.HexFormat;
 import java.util.Map;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.labels.PieSectionLabelGenerator;
 import org.jfree.chart.plot.PiePlot;
 import org.jfree.data.general.DefaultPieDataset;
 import org.jfree.data.general.PieDataset;
+import org.jfree.svg.SVGGraphics2D;
 import org.springframework.stereotype.Service;
 
+import com.coin.demo.MetricsConfiguration;
 import com.coin.demo.domain.AssetType;
 
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+
 @Service
+@RequiredArgsConstructor
+@Timed(MetricsConfiguration.SERVICE_TIMER)
 public class ChartService {
 
-    public File generatePortfolioPieChart(Map<AssetType, BigDecimal> assetTotals, String title) {
+    public static final int WIDTH = 800;
+    public static final int HEIGHT = 600;
+
+    private final ChartCache cache;
+    private final ChartRenderExecutor renderExecutor;
+
+    /**
+     * Writes the pie chart to {@code out}. Images are served from
+     * {@link ChartCache} when the same data, title, size and format were rendered
+     * before; otherwise they are rendered on the {@link ChartRenderExecutor} pool
+     * into a {@link ChartImage}, cached and written from its buffer. No temp
+     * files or copies are involved.
+     *
+     * @throws ChartRenderRejectedException if the render pool is saturated
+     */
+    public void writePortfolioPieChart(Map<AssetType, BigDecimal> assetTotals, String title, ChartFormat format,
+            OutputStream out) throws IOException {
+        renderPortfolioPieChart(assetTotals, title, format).writeTo(out);
+    }
+
+    /**
+     * The encoded chart image, from the cache or freshly rendered. Waits for
+     * the render; see {@link #renderPortfolioPieChartAsync} for callers that
+     * shouldn't.
+     *
+     * @throws ChartRenderRejectedException if the render pool is saturated or
+     *             the render times out
+     */
+    public ChartImage renderPortfolioPieChart(Map<AssetType, BigDecimal> assetTotals, String title,
+            ChartFormat format) {
+        try {
+            return renderPortfolioPieChartAsync(assetTotals, title, format).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            throw e;
+        }
+    }
+
+    /**
+     * The chart image, completed at once from the cache or once rendered on the
+     * {@link ChartRenderExecutor} pool. A render is cached when it finishes,
+     * even if the requests waiting for it have timed out by then.
+     *
+     * @throws ChartRenderRejectedException if the render pool is saturated; the
+     *             future fails with it if the render times out
+     */
+    public CompletableFuture<ChartImage> renderPortfolioPieChartAsync(Map<AssetType, BigDecimal> assetTotals,
+            String title, ChartFormat format) {
+        String key = fingerprint(assetTotals, title, format);
+        ChartImage cached = cache.get(key);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        return renderExecutor.render(key, () -> {
+            ChartImage image;
+            try {
+                image = ChartImage.encode(out -> encode(createPieChart(assetTotals, title), format, out));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to generate chart image", e);
+            }
+            cache.put(key, image);
+            return image;
+        });
+    }
+
+    private static void encode(JFreeChart chart, ChartFormat format, OutputStream out) throws IOException {
+        switch (format) {
+            case PNG -> ChartUtils.writeChartAsPNG(out, chart, WIDTH, HEIGHT);
+            case SVG -> {
+                SVGGraphics2D g2 = new SVGGraphics2D(WIDTH, HEIGHT);
+                chart.draw(g2, new Rectangle(0, 0, WIDTH, HEIGHT));
+                out.write(g2.getSVGDocument().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Hex SHA-256 of everything that affects the rendered image: the values in
+     * iteration order (which decides slice colours), the title, the size and the
+     * format. Used as the cache key and as the chart's HTTP ETag.
+     */
+    public String fingerprint(Map<AssetType, BigDecimal> assetTotals, String title, ChartFormat format) {
+        StringBuilder sb = new StringBuilder(128).append(title).append('|').append(WIDTH).append('x').append(HEIGHT)
+                .append('|').append(format.name());
+        assetTotals.forEach((assetType, total) -> sb.append('|').append(assetType.name()).append('=')
+                .append(total == null ? "" : total.stripTrailingZeros().toPlainString()));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    JFreeChart createPieChart(Map<AssetType, BigDecimal> assetTotals, String title) {
         DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
         assetTotals.forEach((assetType, total) -> {
             double v = total == null ? 0d : total.doubleValue();
@@ -64,13 +170,6 @@ public class ChartService {
             }
         });
 
-        BufferedImage image = chart.createBufferedImage(800, 600);
-        try {
-            File tempFile = Files.createTempFile("portfolio-", ".png").toFile();
-            ImageIO.write(image, "png", tempFile);
-            return tempFile;
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to generate chart image", e);
-        }
+        return chart;
     }
 }
@@ -0,0 +1,219 @@
+package com.coin.demo.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.web.dto.InvestmentRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Streams trades from NDJSON or CSV into the database in chunks. Rows are
+ * parsed one line at a time and validated against {@link InvestmentRequest};
+ * bad rows are reported and skipped. Each chunk is inserted in its own
+ * transaction with JDBC batching (ids come from a pooled sequence) and folded
+ * into the ledger with one lock per user, so a failure only loses its own chunk.
+ */
+@Service
+@RequiredArgsConstructor
+public class InvestmentImportService {
+
+    /** Required CSV header columns, matched case-insensitively; {@code date} is optional. */
+    private static final List<String> CSV_REQUIRED = List.of("userid", "type", "amount", "currency", "price",
+            "operationtype");
+
+    private final InvestmentRepository investmentRepository;
+    private final PositionLedgerService ledgerService;
+    private final PlatformTransactionManager transactionManager;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+
+    @Value("${investment.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${investment.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public ImportReport importNdjson(Reader reader) throws IOException {
+        Batch batch = new Batch();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        long lineNo = 0;
+        while ((line = in.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank())
+                continue;
+            try {
+                batch.add(lineNo, objectMapper.readValue(line, InvestmentRequest.class));
+            } catch (JsonProcessingException e) {
+                batch.reject(lineNo, e.getOriginalMessage());
+            }
+        }
+        return batch.finish();
+    }
+
+    /**
+     * The first line is a header naming the columns, in any order; {@code date}
+     * is optional. Values can't contain commas, which holds for every field.
+     */
+    public ImportReport importCsv(Reader reader) throws IOException {
+        Batch batch = new Batch();
+        BufferedReader in = new BufferedReader(reader);
+        String header = in.readLine();
+        if (header == null)
+            return batch.finish();
+        Map<String, Integer> columns = new HashMap<>();
+        String[] names = header.split(",", -1);
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        List<String> missing = CSV_REQUIRED.stream().filter(c -> !columns.containsKey(c)).toList();
+        if (!missing.isEmpty()) {
+            batch.reject(1, "missing columns " + missing);
+            return batch.finish();
+        }
+        String line;
+        long lineNo = 1;
+        while ((line = in.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank())
+                continue;
+            String[] values = line.split(",", -1);
+            if (values.length != names.length) {
+                batch.reject(lineNo, "expected " + names.length + " columns, got " + values.length);
+                continue;
+            }
+            try {
+                batch.add(lineNo, parseCsvRow(values, columns));
+            } catch (IllegalArgumentException | DateTimeException e) {
+                batch.reject(lineNo, e.getMessage());
+            }
+        }
+        return batch.finish();
+    }
+
+    private static InvestmentRequest parseCsvRow(String[] values, Map<String, Integer> columns) {
+        InvestmentRequest req = new InvestmentRequest();
+        String userId = csvValue(values, columns, "userid");
+        req.setUserId(userId == null ? null : Long.valueOf(userId));
+        String type = csvValue(values, columns, "type");
+        req.setType(type == null ? null : AssetType.valueOf(type.toUpperCase(Locale.ROOT)));
+        String amount = csvValue(values, columns, "amount");
+        req.setAmount(amount == null ? null : new BigDecimal(amount));
+        req.setCurrency(csvValue(values, columns, "currency"));
+        String price = csvValue(values, columns, "price");
+        req.setPrice(price == null ? null : new BigDecimal(price));
+        String op = csvValue(values, columns, "operationtype");
+        req.setOperationType(op == null ? null : OperationType.valueOf(op.toUpperCase(Locale.ROOT)));
+        String date = csvValue(values, columns, "date");
+        req.setDate(date == null ? null : Instant.parse(date));
+        return req;
+    }
+
+    private static String csvValue(String[] values, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null)
+            return null;
+        String value = values[index].trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /** Accumulates valid rows and writes them a chunk at a time. */
+    private final class Batch {
+        private final List<Investment> rows = new ArrayList<>(chunkSize);
+        private final List<Long> lines = new ArrayList<>(chunkSize);
+        private final List<RowError> errors = new ArrayList<>();
+        private long imported;
+        private long rejected;
+
+        void add(long lineNo, InvestmentRequest req) {
+            Set<ConstraintViolation<InvestmentRequest>> violations = validator.validate(req);
+            if (!violations.isEmpty()) {
+                reject(lineNo, violations.stream()
+                        .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", ")));
+                return;
+            }
+            rows.add(Investment.builder()
+                    .userId(req.getUserId())
+                    .type(req.getType())
+                    .amount(req.getAmount())
+                    .currency(req.getCurrency())
+                    .price(req.getPrice())
+                    .operationType(req.getOperationType())
+                    .date(req.getDate() == null ? Instant.now() : req.getDate())
+                    .build());
+            lines.add(lineNo);
+            if (rows.size() >= chunkSize)
+                flush();
+        }
+
+        void reject(long lineNo, String message) {
+            rejected++;
+            if (errors.size() < maxReportedErrors)
+                errors.add(new RowError(lineNo, message));
+        }
+
+        private void flush() {
+            if (rows.isEmpty())
+                return;
+            try {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    investmentRepository.saveAll(rows);
+                    entityManager.flush();
+                    ledgerService.applyAll(rows);
+                    entityManager.flush();
+                    // keep the persistence context from growing with the import
+                    entityManager.clear();
+                });
+                imported += rows.size();
+            } catch (RuntimeException e) {
+                // any failure, not only SQL ones, costs this chunk and not the rest of the import
+                String message = "chunk rolled back: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                for (Long lineNo : lines)
+                    reject(lineNo, message);
+            }
+            rows.clear();
+            lines.clear();
+        }
+
+        ImportReport finish() {
+            flush();
+            return new ImportReport(imported, rejected, errors, rejected > errors.size());
+        }
+    }
+
+    public record ImportReport(long imported, long rejected, List<RowError> errors, boolean errorsTruncated) {
+    }
+
+    public record RowError(long line, String message) {
+    }
+}
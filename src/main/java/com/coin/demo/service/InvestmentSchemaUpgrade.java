@@ -0,0 +1,100 @@
+package com.coin.demo.service;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.coin.demo.domain.Investment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Brings databases created by older versions in line with the current
+ * {@link Investment} mapping; {@code ddl-auto=update} adds new objects but
+ * never adjusts or drops old ones.
+ *
+ * <p>Runs while the context starts, once the schema update is done. The
+ * investment repository depends on this bean, so nothing can insert a trade
+ * (web, bot, journal replay) before the id sequence is aligned. Each step
+ * logs its own failure and doesn't stop the others.
+ */
+@Slf4j
+@Component(InvestmentSchemaUpgrade.BEAN_NAME)
+@RequiredArgsConstructor
+class InvestmentSchemaUpgrade {
+
+    static final String BEAN_NAME = "investmentSchemaUpgrade";
+    private static final String REPOSITORY_BEAN = "investmentRepository";
+
+    /** Superseded by the composite {@code (userId, date)} index. */
+    private static final String REPLACED_INDEX = "idx_investments_user";
+
+    private final JdbcTemplate jdbc;
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void upgrade() {
+        alignIdSequence();
+        dropReplacedIndex();
+    }
+
+    /**
+     * Ids used to come from an identity column. On such a database the new
+     * sequence starts at 1 and would hand out ids that are already taken, so it
+     * is moved past the highest existing id when it is behind.
+     */
+    private void alignIdSequence() {
+        try {
+            Long maxId = jdbc.queryForObject("select max(id) from investments", Long.class);
+            if (maxId == null)
+                return;
+            Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices()
+                    .getDialect();
+            Long next = jdbc.queryForObject(
+                    dialect.getSequenceSupport().getSequenceNextValString(Investment.ID_SEQUENCE), Long.class);
+            // a pooled fetch of `next` hands out (next - allocation, next]
+            if (next != null && next - Investment.ID_ALLOCATION_SIZE < maxId) {
+                long restart = maxId + Investment.ID_ALLOCATION_SIZE + 1;
+                jdbc.execute("alter sequence " + Investment.ID_SEQUENCE + " restart with " + restart);
+                log.info("Moved {} to {} past existing investment ids", Investment.ID_SEQUENCE, restart);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not check {} against existing investment ids: {}", Investment.ID_SEQUENCE,
+                    e.toString());
+        }
+    }
+
+    private void dropReplacedIndex() {
+        try {
+            jdbc.execute("drop index if exists " + REPLACED_INDEX);
+        } catch (RuntimeException e) {
+            log.warn("Could not drop {}: {}", REPLACED_INDEX, e.toString());
+        }
+    }
+
+    /** Makes the investment repository, and so everything that writes trades, wait for the upgrade. */
+    @Component
+    static class RepositoryOrdering implements BeanFactoryPostProcessor {
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+            if (!beanFactory.containsBeanDefinition(REPOSITORY_BEAN))
+                return;
+            BeanDefinition repository = beanFactory.getBeanDefinition(REPOSITORY_BEAN);
+            String[] dependsOn = repository.getDependsOn() == null ? new String[0] : repository.getDependsOn();
+            if (!Arrays.asList(dependsOn).contains(BEAN_NAME))
+                repository.setDependsOn(Stream.concat(Arrays.stream(dependsOn), Stream.of(BEAN_NAME))
+                        .toArray(String[]::new));
+        }
+    }
+}
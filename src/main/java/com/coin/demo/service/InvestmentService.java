@@ -1,14 +1,25 @@
 package com.coin.demo.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.coin.demo.domain.Investment;
 import com.coin.demo.repository.InvestmentRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 
 @Service
@@ -16,6 +27,8 @@ import lombok.RequiredArgsConstructor;
 public class InvestmentService {
 
     private final InvestmentRepository investmentRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
 
     public List<Investment> getInvestmentsForUser(Long userId) {
         return investmentRepository.findByUserId(userId);
@@ -24,4 +37,64 @@ public class InvestmentService {
     public Page<Investment> getInvestmentsPage(Long userId, Pageable pageable) {
         return investmentRepository.findByUserId(userId, pageable);
     }
+
+    /**
+     * Newest-first page of at most {@code limit} trades following {@code cursor}
+     * (null for the first page). The returned cursor is null on the last page.
+     */
+    @Transactional(readOnly = true)
+    public HistoryPage getHistory(Long userId, String cursor, int limit) {
+        // one extra row tells us whether another page exists without a count query
+        Limit fetch = Limit.of(limit + 1);
+        List<Investment> rows;
+        if (cursor == null) {
+            rows = investmentRepository.findFirstPage(userId, fetch);
+        } else {
+            Cursor after = Cursor.decode(cursor);
+            rows = investmentRepository.findPageBefore(userId, after.date(), after.id(), fetch);
+        }
+        if (rows.size() <= limit)
+            return new HistoryPage(rows, null);
+        List<Investment> items = rows.subList(0, limit);
+        Investment last = items.get(limit - 1);
+        return new HistoryPage(List.copyOf(items), new Cursor(last.getDate(), last.getId()).encode());
+    }
+
+    /**
+     * Writes the full history, oldest first, as one JSON object per line. Rows
+     * come through a database cursor and are detached once written, so memory
+     * stays flat however long the history is.
+     */
+    @Transactional(readOnly = true)
+    public void exportNdjson(Long userId, OutputStream out) throws IOException {
+        try (NdjsonWriter<Investment> ndjson = new NdjsonWriter<>(objectMapper, Investment.class, out);
+                Stream<Investment> rows = investmentRepository.streamByUserId(userId)) {
+            for (Investment inv : (Iterable<Investment>) rows::iterator) {
+                ndjson.write(inv);
+                entityManager.detach(inv);
+            }
+        }
+    }
+
+    public record HistoryPage(List<Investment> items, String nextCursor) {
+    }
+
+    /** Position after the last row of a page, handed to clients as an opaque token. */
+    record Cursor(Instant date, Long id) {
+
+        String encode() {
+            String raw = date + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new Cursor(Instant.parse(raw.substring(0, sep)), Long.valueOf(raw.substring(sep + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+        }
+    }
 }
@@ -0,0 +1,192 @@
+package com.coin.demo.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.pricing.PriceSnapshot;
+
+/**
+ * Open lots and realized P&L of one user, per asset, kept under both FIFO and
+ * weighted-average cost at once. Quantities are longs at {@link #QTY_SCALE}
+ * decimals and toman amounts longs at {@link #TOMAN_SCALE}. FIFO lots sit in a
+ * ring buffer of two parallel arrays, so a sell consumes from the head without
+ * shifting and a buy appends at the tail; running totals make reads O(assets).
+ *
+ * <p>Trades must be applied in {@code (date, id)} order, the order the history
+ * is replayed in; {@link #accepts} tells whether one can still be appended.
+ * Selling more than is open matches what there is and counts the rest as
+ * unmatched, leaving it out of the P&L. Not thread-safe.
+ */
+public final class LotBook {
+
+    static final int QTY_SCALE = PnlKernel.QTY_SCALE;
+    static final int TOMAN_SCALE = PnlKernel.TOMAN_SCALE;
+
+    private static final AssetType[] ASSETS = AssetType.values();
+
+    private final Lots[] lots = new Lots[ASSETS.length];
+    private Instant lastDate;
+    private long lastId;
+
+    /** Whether a trade at {@code (date, id)} comes after everything applied so far. */
+    public boolean accepts(Instant date, long id) {
+        return lastDate == null || date.isAfter(lastDate) || (date.equals(lastDate) && id > lastId);
+    }
+
+    /**
+     * Applies a trade of {@code quantity} units (at {@link #QTY_SCALE}) for a
+     * total of {@code toman} (at {@link #TOMAN_SCALE}) paid on a buy or
+     * received on a sell. A negative quantity reverses the direction.
+     */
+    public void apply(AssetType type, boolean buy, long quantity, long toman, Instant date, long id) {
+        if (!accepts(date, id))
+            throw new IllegalArgumentException("Trade " + id + " at " + date + " is older than the last one applied");
+        if (quantity < 0) {
+            // the ledger sums signed amounts, so a negative buy is a sell and vice versa
+            buy = !buy;
+            quantity = -quantity;
+            toman = -toman;
+        }
+        Lots l = lots[type.ordinal()];
+        if (l == null)
+            l = lots[type.ordinal()] = new Lots();
+        if (buy) {
+            l.buy(quantity, toman);
+        } else {
+            l.sell(quantity, toman);
+        }
+        lastDate = date;
+        lastId = id;
+    }
+
+    /** Realized and unrealized P&L per traded asset under {@code method}, at {@code prices}. */
+    public Map<AssetType, LotPnl> pnl(CostMethod method, PriceSnapshot prices) {
+        Map<AssetType, LotPnl> out = new EnumMap<>(AssetType.class);
+        for (AssetType type : ASSETS) {
+            Lots l = lots[type.ordinal()];
+            if (l != null)
+                out.put(type, l.pnl(method, prices.unitPriceToman(type)));
+        }
+        return out;
+    }
+
+    /** {@code value * part / whole}, rounded half up; {@code whole} must be positive. */
+    static long share(long value, long part, long whole) {
+        long product;
+        try {
+            product = Math.multiplyExact(value, part);
+        } catch (ArithmeticException overflow) {
+            return new BigDecimal(BigInteger.valueOf(value).multiply(BigInteger.valueOf(part)))
+                    .divide(BigDecimal.valueOf(whole), 0, RoundingMode.HALF_UP).longValueExact();
+        }
+        long quotient = product / whole;
+        long remainder = Math.abs(product % whole);
+        return remainder >= whole - remainder ? quotient + Long.signum(product) : quotient;
+    }
+
+    private static BigDecimal toman(long scaled) {
+        return BigDecimal.valueOf(scaled, TOMAN_SCALE);
+    }
+
+    public enum CostMethod {
+        FIFO, AVERAGE
+    }
+
+    /**
+     * One asset's position under a cost method. Market value and unrealized
+     * P&L are null when the asset has no current price.
+     */
+    public record LotPnl(BigDecimal openQuantity, int openLots, BigDecimal openCost, BigDecimal marketValue,
+            BigDecimal unrealized, BigDecimal realized, BigDecimal unmatchedQuantity) {
+    }
+
+    private static final class Lots {
+        // ring buffer, capacity a power of two
+        private long[] qty = new long[4];
+        private long[] cost = new long[4];
+        private int head;
+        private int size;
+
+        private long openQty;
+        private long unmatchedQty;
+        private long fifoCost;
+        private long fifoRealized;
+        private long avgCost;
+        private long avgRealized;
+
+        void buy(long quantity, long toman) {
+            if (size == qty.length)
+                grow();
+            int tail = (head + size) & (qty.length - 1);
+            qty[tail] = quantity;
+            cost[tail] = toman;
+            size++;
+            openQty = Math.addExact(openQty, quantity);
+            fifoCost = Math.addExact(fifoCost, toman);
+            avgCost = Math.addExact(avgCost, toman);
+        }
+
+        void sell(long quantity, long proceeds) {
+            long matched = Math.min(quantity, openQty);
+            unmatchedQty = Math.addExact(unmatchedQty, quantity - matched);
+            if (matched <= 0)
+                return;
+            long matchedProceeds = matched == quantity ? proceeds : share(proceeds, matched, quantity);
+
+            // average: the sold fraction of the pooled cost
+            long avgConsumed = matched == openQty ? avgCost : share(avgCost, matched, openQty);
+            avgCost -= avgConsumed;
+            avgRealized = Math.addExact(avgRealized, matchedProceeds - avgConsumed);
+
+            // FIFO: whole lots from the head, then part of the next one
+            long remaining = matched;
+            long fifoConsumed = 0;
+            while (remaining > 0) {
+                if (qty[head] <= remaining) {
+                    remaining -= qty[head];
+                    fifoConsumed += cost[head];
+                    head = (head + 1) & (qty.length - 1);
+                    size--;
+                } else {
+                    long part = share(cost[head], remaining, qty[head]);
+                    qty[head] -= remaining;
+                    cost[head] -= part;
+                    fifoConsumed += part;
+                    remaining = 0;
+                }
+            }
+            fifoCost -= fifoConsumed;
+            fifoRealized = Math.addExact(fifoRealized, matchedProceeds - fifoConsumed);
+            openQty -= matched;
+        }
+
+        private void grow() {
+            long[] q = new long[qty.length * 2];
+            long[] c = new long[cost.length * 2];
+            for (int i = 0; i < size; i++) {
+                int from = (head + i) & (qty.length - 1);
+                q[i] = qty[from];
+                c[i] = cost[from];
+            }
+            qty = q;
+            cost = c;
+            head = 0;
+        }
+
+        LotPnl pnl(CostMethod method, BigDecimal unitPrice) {
+            boolean fifo = method == CostMethod.FIFO;
+            BigDecimal open = BigDecimal.valueOf(openQty, QTY_SCALE);
+            BigDecimal openCost = toman(fifo ? fifoCost : avgCost);
+            BigDecimal market = unitPrice == null ? null
+                    : unitPrice.multiply(open).setScale(TOMAN_SCALE, RoundingMode.HALF_UP);
+            int openLots = fifo ? size : (openQty > 0 ? 1 : 0);
+            return new LotPnl(open, openLots, openCost, market, market == null ? null : market.subtract(openCost),
+                    toman(fifo ? fifoRealized : avgRealized), BigDecimal.valueOf(unmatchedQty, QTY_SCALE));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.coin.demo.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.CostCurrency;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PriceTimeline;
+import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.service.LotBook.CostMethod;
+import com.coin.demo.service.LotBook.LotPnl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Realized and unrealized P&L from open lots. A user's {@link LotBook} is
+ * replayed from the trade history on first read and then kept in memory
+ * (least recently used users are dropped); trades the ledger records are
+ * appended to a loaded book once their transaction commits. A trade dated
+ * before the last one in the book can't be appended, so the book is dropped
+ * and replayed on the next read.
+ *
+ * <p>Dollar and euro payments are converted to toman at the recorded rate of
+ * the trade's date, like {@link PnlKernel}. As in {@link PortfolioViewCache},
+ * a replay that overlapped a commit for the same user is not kept.
+ */
+@Service
+public class LotService {
+
+    private static final int STRIPES = 256;
+    private static final Comparator<Investment> HISTORY_ORDER = Comparator.comparing(Investment::getDate)
+            .thenComparing(Investment::getId);
+
+    private final InvestmentRepository investmentRepository;
+    private final PricingService pricingService;
+    private final ValuationMetrics metrics;
+    private final EntityManager entityManager;
+    private final int maxUsers;
+    private final LinkedHashMap<Long, LotBook> books;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    private final Counter replays;
+    private final Counter evictions;
+
+    public LotService(InvestmentRepository investmentRepository, PricingService pricingService,
+            ValuationMetrics metrics, EntityManager entityManager, MeterRegistry registry,
+            @Value("${lots.max-users:10000}") int maxUsers) {
+        this.investmentRepository = investmentRepository;
+        this.pricingService = pricingService;
+        this.metrics = metrics;
+        this.entityManager = entityManager;
+        this.maxUsers = Math.max(1, maxUsers);
+        this.books = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, LotBook> eldest) {
+                if (size() <= LotService.this.maxUsers)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+        this.replays = Counter.builder("lots.replays").register(registry);
+        this.evictions = Counter.builder("lots.evictions").register(registry);
+        Gauge.builder("lots.books", this, LotService::size).register(registry);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<AssetType, LotPnl> pnl(Long userId, CostMethod method) {
+        return pnl(userId, method, pricingService.currentSnapshot());
+    }
+
+    /** Per-asset open position, realized and unrealized P&L under {@code method}, valued at {@code prices}. */
+    @Transactional(readOnly = true)
+    public Map<AssetType, LotPnl> pnl(Long userId, CostMethod method, PriceSnapshot prices) {
+        synchronized (books) {
+            LotBook book = books.get(userId);
+            if (book != null)
+                return book.pnl(method, prices);
+        }
+        int stripe = stripe(userId);
+        long generation = generations.get(stripe);
+        LotBook replayed = replay(userId);
+        synchronized (books) {
+            LotBook loaded = books.get(userId);
+            if (loaded != null)
+                return loaded.pnl(method, prices);
+            if (generations.get(stripe) == generation)
+                books.put(userId, replayed);
+            return replayed.pnl(method, prices);
+        }
+    }
+
+    /**
+     * Appends just-saved trades of one user to their book, if it is loaded,
+     * when the current transaction commits (or right away if there is none).
+     */
+    public void applyAfterCommit(Long userId, List<Investment> trades) {
+        List<Investment> ordered = trades.stream().sorted(HISTORY_ORDER).toList();
+        afterCommit(() -> applyCommitted(userId, ordered));
+    }
+
+    /** Drops the user's book when the current transaction commits; for writes that rewrite history. */
+    public void invalidateAfterCommit(Long userId) {
+        afterCommit(() -> invalidate(userId));
+    }
+
+    public void invalidate(Long userId) {
+        synchronized (books) {
+            generations.incrementAndGet(stripe(userId));
+            books.remove(userId);
+        }
+    }
+
+    public int size() {
+        synchronized (books) {
+            return books.size();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void applyCommitted(Long userId, List<Investment> trades) {
+        PriceSnapshot current = pricingService.currentSnapshot();
+        PriceTimeline fxHistory = pricingService.history();
+        synchronized (books) {
+            generations.incrementAndGet(stripe(userId));
+            LotBook book = books.get(userId);
+            if (book == null)
+                return;
+            try {
+                for (Investment inv : trades) {
+                    if (!book.accepts(inv.getDate(), inv.getId())) {
+                        // backdated: only a replay puts it in the right place
+                        books.remove(userId);
+                        return;
+                    }
+                    apply(book, inv, current, fxHistory);
+                }
+            } catch (ArithmeticException e) {
+                // the trade is committed, so don't fail the caller; the next read replays and reports it
+                books.remove(userId);
+            }
+        }
+    }
+
+    private LotBook replay(Long userId) {
+        replays.increment();
+        PriceSnapshot current = pricingService.currentSnapshot();
+        PriceTimeline fxHistory = pricingService.history();
+        LotBook book = new LotBook();
+        long[] scanned = new long[AssetType.values().length];
+        try (Stream<Investment> rows = investmentRepository.streamByUserId(userId)) {
+            for (Investment inv : (Iterable<Investment>) rows::iterator) {
+                apply(book, inv, current, fxHistory);
+                scanned[inv.getType().ordinal()]++;
+                entityManager.detach(inv);
+            }
+        }
+        for (AssetType type : AssetType.values())
+            metrics.tradesScanned(ValuationMetrics.LOTS, type, scanned[type.ordinal()]);
+        return book;
+    }
+
+    private static void apply(LotBook book, Investment inv, PriceSnapshot current, PriceTimeline fxHistory) {
+        BigDecimal rate = PnlKernel.tomanPerAt(CostCurrency.of(inv.getCurrency()), inv, current, fxHistory);
+        long toman = inv.getPrice().multiply(rate).setScale(LotBook.TOMAN_SCALE, RoundingMode.HALF_UP)
+                .unscaledValue().longValueExact();
+        // a just-saved entity still has the unrounded amount; the column keeps QTY_SCALE decimals
+        long quantity = inv.getAmount().setScale(LotBook.QTY_SCALE, RoundingMode.HALF_UP).unscaledValue()
+                .longValueExact();
+        book.apply(inv.getType(), inv.getOperationType() == OperationType.BUY, quantity, toman, inv.getDate(),
+                inv.getId());
+    }
+
+    private static int stripe(Long userId) {
+        return Long.hashCode(userId) & (STRIPES - 1);
+    }
+}
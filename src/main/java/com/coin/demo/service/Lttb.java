@@ -0,0 +1,66 @@
+package com.coin.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Steinarsson, 2013): keeps the
+ * first and last points and, from each of {@code threshold - 2} equal buckets
+ * in between, the point forming the largest triangle with the previously kept
+ * point and the average of the next bucket. Preserves the visual shape of a
+ * series, peaks and dips included, far better than taking every n-th point.
+ */
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    /** Points must be sorted by x; returns them unchanged if there are no more than {@code threshold}. */
+    public static <T> List<T> downsample(List<T> points, int threshold, ToDoubleFunction<T> x,
+            ToDoubleFunction<T> y) {
+        if (threshold < 3)
+            throw new IllegalArgumentException("threshold must be at least 3");
+        int n = points.size();
+        if (threshold >= n)
+            return points;
+
+        List<T> sampled = new ArrayList<>(threshold);
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        sampled.add(points.get(0));
+        for (int i = 0; i < threshold - 2; i++) {
+            // average of the next bucket (the last point for the final bucket)
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += x.applyAsDouble(points.get(j));
+                avgY += y.applyAsDouble(points.get(j));
+            }
+            int avgLength = avgEnd - avgStart;
+            avgX /= avgLength;
+            avgY /= avgLength;
+
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double ax = x.applyAsDouble(points.get(a));
+            double ay = y.applyAsDouble(points.get(a));
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (y.applyAsDouble(points.get(j)) - ay)
+                        - (ax - x.applyAsDouble(points.get(j))) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled.add(points.get(next));
+            a = next;
+        }
+        sampled.add(points.get(n - 1));
+        return sampled;
+    }
+}
@@ -0,0 +1,39 @@
+package com.coin.demo.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writes values as NDJSON, one JSON object per line, through a single
+ * generator. Lines are flushed when the generator's buffer fills and on
+ * {@link #close()}, not after each value. Closing leaves {@code out} open.
+ */
+final class NdjsonWriter<T> implements Closeable {
+
+    private final ObjectWriter writer;
+    private final JsonGenerator json;
+
+    NdjsonWriter(ObjectMapper objectMapper, Class<T> type, OutputStream out) throws IOException {
+        this.writer = objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.json = objectMapper.getFactory().createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // root values are space-separated by default; here the newline is the separator
+        json.setRootValueSeparator(null);
+    }
+
+    void write(T value) throws IOException {
+        writer.writeValue(json, value);
+        json.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+}
@@ -0,0 +1,186 @@
+package com.coin.demo.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.CostCurrency;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PriceTimeline;
+
+/**
+ * Per-asset P&L folds over a list of trades: PnL = current value of the
+ * signed quantity minus the signed total paid, both in toman.
+ *
+ * <p>{@link #exact} is the original {@code BigDecimal} loop. {@link #fixedPoint}
+ * gives identical results using scaled longs: quantities and paid totals at 6
+ * decimals (the {@code Investment} column scale), unit prices at 2 decimals,
+ * so every product is exact at 8 decimals and is accumulated in a 128-bit
+ * accumulator per asset without allocating. Inputs that don't fit that
+ * representation, or an accumulator overflow, fall back to {@link #exact}.
+ *
+ * <p>Given a {@link PriceTimeline}, what was paid in dollars or euros is
+ * converted at the rate on the trade's date instead of today's.
+ */
+public final class PnlKernel {
+
+    static final int QTY_SCALE = 6;
+    static final int TOMAN_SCALE = 2;
+    private static final int PRODUCT_SCALE = QTY_SCALE + TOMAN_SCALE;
+    private static final long TIMELINE_TO_TOMAN_SCALE = 10_000; // 10^(PriceTimeline.SCALE - TOMAN_SCALE)
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private static final AssetType[] ASSETS = AssetType.values();
+    private static final CostCurrency[] CURRENCIES = CostCurrency.values();
+
+    private PnlKernel() {
+    }
+
+    public static Map<AssetType, BigDecimal> exact(List<Investment> investments, PriceSnapshot prices) {
+        return exact(investments, prices, null);
+    }
+
+    /** {@code fxHistory} may be null to convert every payment at {@code prices}. */
+    public static Map<AssetType, BigDecimal> exact(List<Investment> investments, PriceSnapshot prices,
+            PriceTimeline fxHistory) {
+        Map<AssetType, BigDecimal> pnl = new EnumMap<>(AssetType.class);
+        for (Investment inv : investments) {
+            BigDecimal unitCurrent = prices.unitPriceToman(inv.getType());
+            BigDecimal signedQty = inv.getOperationType() == OperationType.BUY ? inv.getAmount()
+                    : inv.getAmount().negate();
+            BigDecimal currentValue = unitCurrent.multiply(signedQty);
+
+            BigDecimal unitPaidToman = tomanPerAt(CostCurrency.of(inv.getCurrency()), inv, prices, fxHistory);
+            BigDecimal paidTotalToman = inv.getPrice().multiply(unitPaidToman);
+            BigDecimal signedPaid = inv.getOperationType() == OperationType.BUY ? paidTotalToman
+                    : paidTotalToman.negate();
+
+            BigDecimal delta = currentValue.subtract(signedPaid);
+            pnl.merge(inv.getType(), delta, BigDecimal::add);
+        }
+        // round values
+        return pnl.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
+                e -> e.getValue().setScale(2, RoundingMode.HALF_UP)));
+    }
+
+    public static Map<AssetType, BigDecimal> fixedPoint(List<Investment> investments, PriceSnapshot prices) {
+        return fixedPoint(investments, prices, null);
+    }
+
+    public static Map<AssetType, BigDecimal> fixedPoint(List<Investment> investments, PriceSnapshot prices,
+            PriceTimeline fxHistory) {
+        try {
+            return fixedPointOrThrow(investments, prices, fxHistory);
+        } catch (ArithmeticException overflow) {
+            return exact(investments, prices, fxHistory);
+        }
+    }
+
+    static Map<AssetType, BigDecimal> fixedPointOrThrow(List<Investment> investments, PriceSnapshot prices) {
+        return fixedPointOrThrow(investments, prices, null);
+    }
+
+    /** Throws {@link ArithmeticException} when a value can't be represented exactly. */
+    static Map<AssetType, BigDecimal> fixedPointOrThrow(List<Investment> investments, PriceSnapshot prices,
+            PriceTimeline fxHistory) {
+        long[] unit = new long[ASSETS.length];
+        for (AssetType type : ASSETS) {
+            BigDecimal price = prices.unitPriceToman(type);
+            if (price != null)
+                unit[type.ordinal()] = toScaled(price, TOMAN_SCALE);
+        }
+        long[] fx = new long[CURRENCIES.length];
+        for (CostCurrency currency : CURRENCIES) {
+            fx[currency.ordinal()] = toScaled(prices.tomanPer(currency), TOMAN_SCALE);
+        }
+
+        long[] hi = new long[ASSETS.length];
+        long[] lo = new long[ASSETS.length];
+        boolean[] seen = new boolean[ASSETS.length];
+        for (Investment inv : investments) {
+            int a = inv.getType().ordinal();
+            long qty = toScaled(inv.getAmount(), QTY_SCALE);
+            long paid = toScaled(inv.getPrice(), QTY_SCALE);
+            if (inv.getOperationType() != OperationType.BUY) {
+                qty = Math.negateExact(qty);
+                paid = Math.negateExact(paid);
+            }
+            CostCurrency currency = CostCurrency.of(inv.getCurrency());
+            long f = fx[currency.ordinal()];
+            if (fxHistory != null && currency.fxAsset() != null) {
+                long historical = fxHistory.scaledPriceAt(currency.fxAsset(), inv.getDate().toEpochMilli());
+                if (historical != PriceTimeline.NONE) {
+                    if (historical % TIMELINE_TO_TOMAN_SCALE != 0)
+                        throw new ArithmeticException("FX rate has more than " + TOMAN_SCALE + " decimals");
+                    f = historical / TIMELINE_TO_TOMAN_SCALE;
+                }
+            }
+            // delta = unit * qty - paid * fx, both terms at PRODUCT_SCALE
+            long u = unit[a];
+            add128(hi, lo, a, Math.multiplyHigh(u, qty), u * qty);
+            long p = Math.negateExact(paid);
+            add128(hi, lo, a, Math.multiplyHigh(p, f), p * f);
+            seen[a] = true;
+        }
+
+        Map<AssetType, BigDecimal> pnl = new EnumMap<>(AssetType.class);
+        for (int a = 0; a < ASSETS.length; a++) {
+            if (seen[a])
+                pnl.put(ASSETS[a], toDecimal(hi[a], lo[a]).setScale(2, RoundingMode.HALF_UP));
+        }
+        return pnl;
+    }
+
+    /** Toman per unit of {@code currency} on the trade's date, or at {@code prices} without a recorded rate. */
+    static BigDecimal tomanPerAt(CostCurrency currency, Investment inv, PriceSnapshot prices,
+            PriceTimeline fxHistory) {
+        if (fxHistory != null && currency.fxAsset() != null) {
+            BigDecimal historical = fxHistory.priceAt(currency.fxAsset(), inv.getDate());
+            if (historical != null)
+                return historical;
+        }
+        return prices.tomanPer(currency);
+    }
+
+    /**
+     * Exact conversion to a long with {@code scale} implied decimals: the
+     * unscaled value times a power of ten, without an intermediate
+     * {@code BigDecimal}. Values with more decimals than {@code scale} take
+     * the slow path, which accepts them only if the extra digits are zeros.
+     */
+    static long toScaled(BigDecimal value, int scale) {
+        int shift = scale - value.scale();
+        if (shift < 0 || shift >= POWERS_OF_TEN.length)
+            return value.movePointRight(scale).longValueExact();
+        return Math.multiplyExact(value.unscaledValue().longValueExact(), POWERS_OF_TEN[shift]);
+    }
+
+    private static void add128(long[] hi, long[] lo, int i, long addHi, long addLo) {
+        long sumLo = lo[i] + addLo;
+        long carry = Long.compareUnsigned(sumLo, lo[i]) < 0 ? 1 : 0;
+        hi[i] = Math.addExact(Math.addExact(hi[i], addHi), carry);
+        lo[i] = sumLo;
+    }
+
+    private static BigDecimal toDecimal(long hi, long lo) {
+        if (hi == (lo >> 63))
+            return BigDecimal.valueOf(lo, PRODUCT_SCALE);
+        BigInteger unscaled = BigInteger.valueOf(hi).shiftLeft(64)
+                .add(new BigInteger(Long.toUnsignedString(lo)));
+        return new BigDecimal(unscaled, PRODUCT_SCALE);
+    }
+}
@@ -0,0 +1,5 @@
+package com.coin.demo.service;
+
+/** Published after a transaction that changed the user's positions has committed. */
+public record PortfolioChangedEvent(Long userId) {
+}
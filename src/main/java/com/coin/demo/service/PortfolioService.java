@@ -3,33 +3,60 @@ package com.coin.demo.service;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.coin.demo.MetricsConfiguration;
 import com.coin.demo.domain.AssetType;
 import com.coin.demo.domain.Investment;
 import com.coin.demo.domain.OperationType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PriceTimeline;
+import com.coin.demo.repository.AssetFlowTotal;
 import com.coin.demo.repository.InvestmentRepository;
 import com.coin.demo.repository.PortfolioSnapshotRepository;
+import com.coin.demo.service.PositionLedgerService.Position;
+import com.coin.demo.service.ValuationService.ValuationSummary;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 
 @Service
 @RequiredArgsConstructor
+@Timed(MetricsConfiguration.SERVICE_TIMER)
 public class PortfolioService {
 
     private final InvestmentRepository investmentRepository;
     private final PortfolioSnapshotRepository snapshotRepository;
     private final PricingService pricingService;
+    private final PositionLedgerService ledgerService;
+    private final SnapshotRollupService rollupService;
+    private final PortfolioViewCache viewCache;
+    private final ValuationMetrics metrics;
+
+    @Value("${valuation.fixed-point.enabled:false}")
+    private boolean fixedPointEnabled;
 
     @Transactional
     public Investment recordTransaction(Long userId, AssetType type, BigDecimal amount, String currency,
             BigDecimal price, OperationType operationType, Instant date) {
+        return recordTransaction(userId, type, amount, currency, price, operationType, date, null);
+    }
+
+    /**
+     * Records a trade tagged with an idempotency key. Keys are unique per user,
+     * so storing one that is already taken fails on commit with a
+     * {@code DataIntegrityViolationException}.
+     */
+    @Transactional
+    public Investment recordTransaction(Long userId, AssetType type, BigDecimal amount, String currency,
+            BigDecimal price, OperationType operationType, Instant date, String idempotencyKey) {
         Investment investment = Investment.builder()
                 .userId(userId)
                 .type(type)
@@ -38,31 +65,68 @@ public class PortfolioService {
                 .price(price)
                 .operationType(operationType)
                 .date(date == null ? Instant.now() : date)
+                .idempotencyKey(idempotencyKey)
                 .build();
-        return investmentRepository.save(investment);
+        Investment saved = investmentRepository.save(investment);
+        ledgerService.apply(saved);
+        return saved;
+    }
+
+    /**
+     * Balances, values, allocation and valuation at {@code prices}, computed
+     * together from one ledger read and cached per user until the next trade
+     * or price refresh.
+     */
+    public PortfolioView view(Long userId, PriceSnapshot prices) {
+        return viewCache.get(userId, prices, () -> computeView(userId, prices));
+    }
+
+    private PortfolioView computeView(Long userId, PriceSnapshot prices) {
+        Map<AssetType, Position> positions = ledgerService.positions(userId);
+        Map<AssetType, BigDecimal> balances = new EnumMap<>(AssetType.class);
+        positions.forEach((type, position) -> balances.put(type, position.quantity()));
+        Map<AssetType, BigDecimal> values = valuesToman(balances, prices);
+        // shared between callers through the cache, so hand out read-only maps
+        return new PortfolioView(prices.version(), prices.fetchedAt(), Collections.unmodifiableMap(balances),
+                Collections.unmodifiableMap(values), Collections.unmodifiableMap(allocationPercent(values)),
+                ValuationService.fromPositions(positions, prices));
     }
 
     @Transactional(readOnly = true)
     public Map<AssetType, BigDecimal> calculateCurrentBalances(Long userId) {
-        List<Investment> investments = investmentRepository.findByUserId(userId);
         Map<AssetType, BigDecimal> totals = new EnumMap<>(AssetType.class);
-        for (Investment inv : investments) {
-            BigDecimal signed = inv.getOperationType() == OperationType.BUY ? inv.getAmount()
-                    : inv.getAmount().negate();
-            totals.merge(inv.getType(), signed, BigDecimal::add);
+        ledgerService.positions(userId).forEach((type, position) -> totals.put(type, position.quantity()));
+        return totals;
+    }
+
+    /**
+     * Balances summed by the database straight from the trade history, without
+     * going through the ledger or loading {@link Investment} entities.
+     */
+    @Transactional(readOnly = true)
+    public Map<AssetType, BigDecimal> calculateBalancesFromHistory(Long userId) {
+        Map<AssetType, BigDecimal> totals = new EnumMap<>(AssetType.class);
+        for (AssetFlowTotal flow : investmentRepository.sumFlowsByUserId(userId)) {
+            totals.merge(flow.type(), flow.signedAmount(), BigDecimal::add);
         }
-        return totals.entrySet().stream()
-                .filter(e -> e.getValue() != null)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        return totals;
     }
 
     @Transactional(readOnly = true)
     public Map<AssetType, BigDecimal> calculateCurrentValuesToman(Long userId) {
-        pricingService.refreshLivePricesIfStale();
-        Map<AssetType, BigDecimal> balances = calculateCurrentBalances(userId);
+        return calculateCurrentValuesToman(userId, pricingService.currentSnapshot());
+    }
+
+    @Transactional(readOnly = true)
+    public Map<AssetType, BigDecimal> calculateCurrentValuesToman(Long userId, PriceSnapshot prices) {
+        return valuesToman(calculateCurrentBalances(userId), prices);
+    }
+
+    /** Toman value per asset of the given balances. */
+    static Map<AssetType, BigDecimal> valuesToman(Map<AssetType, BigDecimal> balances, PriceSnapshot prices) {
         Map<AssetType, BigDecimal> values = new EnumMap<>(AssetType.class);
         for (Map.Entry<AssetType, BigDecimal> e : balances.entrySet()) {
-            BigDecimal unit = pricingService.getUnitPriceToman(e.getKey());
+            BigDecimal unit = prices.unitPriceToman(e.getKey());
             values.put(e.getKey(), unit.multiply(e.getValue()).setScale(2, RoundingMode.HALF_UP));
         }
         return values;
@@ -70,36 +134,55 @@ public class PortfolioService {
 
     @Transactional(readOnly = true)
     public Map<AssetType, BigDecimal> calculatePnlByAsset(Long userId, Instant start, Instant end) {
+        return calculatePnlByAsset(userId, start, end, pricingService.currentSnapshot());
+    }
+
+    /**
+     * P&L of the trades in {@code [start, end]} at {@code prices}. Amounts paid in
+     * dollars or euros are converted at the recorded rate of the trade's date.
+     */
+    @Transactional(readOnly = true)
+    public Map<AssetType, BigDecimal> calculatePnlByAsset(Long userId, Instant start, Instant end,
+            PriceSnapshot prices) {
         List<Investment> investments = investmentRepository.findByUserIdAndDateBetween(userId, start, end);
-        Map<AssetType, BigDecimal> pnl = new EnumMap<>(AssetType.class);
-        for (Investment inv : investments) {
-            BigDecimal unitCurrent = pricingService.getUnitPriceToman(inv.getType());
-            BigDecimal signedQty = inv.getOperationType() == OperationType.BUY ? inv.getAmount()
-                    : inv.getAmount().negate();
-            BigDecimal currentValue = unitCurrent.multiply(signedQty);
-
-            BigDecimal unitPaidToman;
-            switch (inv.getCurrency().toUpperCase()) {
-                case "DOLLAR" -> unitPaidToman = pricingService.getUnitPriceToman(AssetType.DOLLAR);
-                case "EURO" -> unitPaidToman = pricingService.getUnitPriceToman(AssetType.EURO);
-                case "TOMAN" -> unitPaidToman = BigDecimal.ONE;
-                default -> unitPaidToman = BigDecimal.ONE;
-            }
-            BigDecimal paidTotalToman = inv.getPrice().multiply(unitPaidToman);
-            BigDecimal signedPaid = inv.getOperationType() == OperationType.BUY ? paidTotalToman
-                    : paidTotalToman.negate();
-
-            BigDecimal delta = currentValue.subtract(signedPaid);
-            pnl.merge(inv.getType(), delta, BigDecimal::add);
+        metrics.tradesScanned(ValuationMetrics.PNL, investments);
+        PriceTimeline fxHistory = pricingService.history();
+        return fixedPointEnabled ? PnlKernel.fixedPoint(investments, prices, fxHistory)
+                : PnlKernel.exact(investments, prices, fxHistory);
+    }
+
+    /** Balances from trades up to {@code asOf}, valued at the prices recorded for that moment. */
+    @Transactional(readOnly = true)
+    public Map<AssetType, BigDecimal> calculateValuesTomanAsOf(Long userId, Instant asOf) {
+        return calculateValuesTomanAsOf(userId, asOf, pricingService.snapshotAt(asOf));
+    }
+
+    @Transactional(readOnly = true)
+    public Map<AssetType, BigDecimal> calculateValuesTomanAsOf(Long userId, Instant asOf, PriceSnapshot prices) {
+        Map<AssetType, BigDecimal> balances = new EnumMap<>(AssetType.class);
+        for (AssetFlowTotal flow : investmentRepository.sumFlowsByUserIdAsOf(userId, asOf)) {
+            balances.merge(flow.type(), flow.signedAmount(), BigDecimal::add);
         }
-        // round values
-        return pnl.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
-                e -> e.getValue().setScale(2, RoundingMode.HALF_UP)));
+        return valuesToman(balances, prices);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<AssetType, BigDecimal> calculateAllocationPercentAsOf(Long userId, Instant asOf,
+            PriceSnapshot prices) {
+        return allocationPercent(calculateValuesTomanAsOf(userId, asOf, prices));
     }
 
     @Transactional(readOnly = true)
     public Map<AssetType, BigDecimal> calculateAllocationPercent(Long userId) {
-        Map<AssetType, BigDecimal> values = calculateCurrentValuesToman(userId);
+        return calculateAllocationPercent(userId, pricingService.currentSnapshot());
+    }
+
+    @Transactional(readOnly = true)
+    public Map<AssetType, BigDecimal> calculateAllocationPercent(Long userId, PriceSnapshot prices) {
+        return allocationPercent(calculateCurrentValuesToman(userId, prices));
+    }
+
+    private static Map<AssetType, BigDecimal> allocationPercent(Map<AssetType, BigDecimal> values) {
         BigDecimal total = values.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
         Map<AssetType, BigDecimal> pct = new EnumMap<>(AssetType.class);
         if (total.compareTo(BigDecimal.ZERO) == 0)
@@ -127,6 +210,7 @@ public class PortfolioService {
         s.setQuarterCoinValue(values.getOrDefault(AssetType.QUARTER_COIN, BigDecimal.ZERO));
         s.setCryptoValue(values.getOrDefault(AssetType.CRYPTO, BigDecimal.ZERO));
         snapshotRepository.save(s);
+        rollupService.apply(List.of(s));
     }
 
     @Transactional(readOnly = true)
@@ -134,4 +218,9 @@ public class PortfolioService {
             Instant end) {
         return snapshotRepository.findByUserIdAndCreatedAtBetweenOrderByCreatedAtAsc(userId, start, end);
     }
+
+    /** Everything the dashboard shows, computed against one price snapshot. */
+    public record PortfolioView(long priceVersion, Instant pricedAt, Map<AssetType, BigDecimal> balances,
+            Map<AssetType, BigDecimal> values, Map<AssetType, BigDecimal> allocation, ValuationSummary valuation) {
+    }
 }
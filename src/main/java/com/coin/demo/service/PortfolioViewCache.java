@@ -0,0 +1,146 @@
+package com.coin.demo.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.service.PortfolioService.PortfolioView;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Least-recently-used cache of one {@link PortfolioView} per user, valid for
+ * the price version it was computed against. Ledger writes drop the user's
+ * entry once their transaction commits, followed by a {@link PortfolioChangedEvent}.
+ *
+ * <p>A read that started before a commit must not put its stale result back
+ * after the invalidation ran. Invalidations bump a generation counter (striped
+ * by user id, so memory stays bounded); a computed view is only stored if its
+ * stripe's generation hasn't moved since the computation started.
+ */
+@Component
+public class PortfolioViewCache {
+
+    private static final int STRIPES = 256;
+
+    private final boolean enabled;
+    private final int maxUsers;
+    private final LinkedHashMap<Long, PortfolioView> entries;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final ApplicationEventPublisher events;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    public PortfolioViewCache(
+            @Value("${portfolio.cache.enabled:true}") boolean enabled,
+            @Value("${portfolio.cache.max-users:10000}") int maxUsers,
+            MeterRegistry registry, ApplicationEventPublisher events) {
+        this.enabled = enabled;
+        this.events = events;
+        this.maxUsers = Math.max(1, maxUsers);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PortfolioView> eldest) {
+                if (size() <= PortfolioViewCache.this.maxUsers)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+        this.hits = Counter.builder("portfolio.cache.gets").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("portfolio.cache.gets").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("portfolio.cache.evictions").register(registry);
+        this.invalidations = Counter.builder("portfolio.cache.invalidations").register(registry);
+        Gauge.builder("portfolio.cache.size", this, PortfolioViewCache::size).register(registry);
+        Gauge.builder("portfolio.cache.hit.ratio", this, PortfolioViewCache::hitRatio).register(registry);
+    }
+
+    /**
+     * The cached view for {@code userId} at {@code prices}, or the loader's
+     * result. Historical snapshots are never cached.
+     */
+    public PortfolioView get(Long userId, PriceSnapshot prices, Supplier<PortfolioView> loader) {
+        if (!enabled || prices.version() == PriceSnapshot.HISTORICAL_VERSION)
+            return loader.get();
+        synchronized (entries) {
+            PortfolioView cached = entries.get(userId);
+            if (cached != null && cached.priceVersion() == prices.version()) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        int stripe = stripe(userId);
+        long generation = generations.get(stripe);
+        PortfolioView view = loader.get();
+        synchronized (entries) {
+            if (generations.get(stripe) == generation) {
+                PortfolioView cached = entries.get(userId);
+                // never replace a view computed against newer prices
+                if (cached == null || cached.priceVersion() < view.priceVersion())
+                    entries.put(userId, view);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Drops the user's entry and publishes a {@link PortfolioChangedEvent} when
+     * the current transaction commits, or right away if there is none. Must be
+     * called by every write that changes what a {@link PortfolioView} shows.
+     */
+    public void invalidateAfterCommit(Long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changed(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                changed(userId);
+            }
+        });
+    }
+
+    private void changed(Long userId) {
+        invalidate(userId);
+        // listeners that recompute must see the entry gone, so publish after invalidating
+        events.publishEvent(new PortfolioChangedEvent(userId));
+    }
+
+    public void invalidate(Long userId) {
+        synchronized (entries) {
+            generations.incrementAndGet(stripe(userId));
+            if (entries.remove(userId) != null)
+                invalidations.increment();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private static int stripe(Long userId) {
+        return Long.hashCode(userId) & (STRIPES - 1);
+    }
+}
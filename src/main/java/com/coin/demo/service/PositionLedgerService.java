@@ -0,0 +1,221 @@
+package com.coin.demo.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.CostBasis;
+import com.coin.demo.domain.CostCurrency;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.Portfolio;
+import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.repository.PortfolioRepository;
+import com.coin.demo.repository.PositionTotal;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Maintains the per-user {@link Portfolio} ledger: running quantity and cost
+ * basis per asset, updated in the same transaction that records a trade.
+ * Reads are O(assets); {@link #rebuild(Long)} and {@link #verify(Long)} replay
+ * the full history to repair or detect drift.
+ */
+@Service
+@RequiredArgsConstructor
+public class PositionLedgerService {
+
+    private final PortfolioRepository portfolioRepository;
+    private final InvestmentRepository investmentRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final PortfolioViewCache viewCache;
+    private final LotService lotService;
+
+    /**
+     * Folds a just-saved transaction into its owner's ledger. The row is locked
+     * so concurrent trades for the same user serialize instead of losing updates.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(Investment inv) {
+        Portfolio ledger = lockLedger(inv.getUserId());
+        if (ledger.getTradeCount() == 0) {
+            // new ledger (new user, or history predating the ledger): the replay
+            // already includes the row saved by the caller
+            overwrite(ledger, replay(inv.getUserId()));
+        } else {
+            ledger.apply(inv);
+        }
+        viewCache.invalidateAfterCommit(inv.getUserId());
+        lotService.applyAfterCommit(inv.getUserId(), List.of(inv));
+    }
+
+    /**
+     * Bulk variant of {@link #apply(Investment)} for imports: one locked ledger
+     * read per user instead of one per trade. Users are locked in id order so
+     * two imports touching the same users can't deadlock.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyAll(Collection<Investment> investments) {
+        Map<Long, List<Investment>> byUser = investments.stream()
+                .collect(Collectors.groupingBy(Investment::getUserId, TreeMap::new, Collectors.toList()));
+        byUser.forEach((userId, trades) -> {
+            Portfolio ledger = lockLedger(userId);
+            if (ledger.getTradeCount() == 0)
+                overwrite(ledger, replay(userId));
+            else
+                trades.forEach(ledger::apply);
+            viewCache.invalidateAfterCommit(userId);
+            lotService.applyAfterCommit(userId, trades);
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public Map<AssetType, Position> positions(Long userId) {
+        Optional<Portfolio> stored = portfolioRepository.findByUserId(userId);
+        if (stored.isPresent())
+            return toPositions(stored.get());
+        if (!investmentRepository.existsByUserId(userId))
+            return Collections.emptyMap();
+        return toPositions(createMissing(userId));
+    }
+
+    @Transactional
+    public LedgerCheck rebuild(Long userId) {
+        // locked before replaying, so no trade can be folded in between
+        Optional<Portfolio> stored = portfolioRepository.findForUpdateByUserId(userId);
+        Portfolio ledger = stored.orElseGet(() -> lockLedger(userId));
+        Portfolio replayed = replay(userId);
+        LedgerCheck before = compare(userId, stored.orElse(null), replayed);
+        overwrite(ledger, replayed);
+        viewCache.invalidateAfterCommit(userId);
+        lotService.invalidateAfterCommit(userId);
+        return before;
+    }
+
+    @Transactional(readOnly = true)
+    public LedgerCheck verify(Long userId) {
+        return compare(userId, portfolioRepository.findByUserId(userId).orElse(null), replay(userId));
+    }
+
+    /**
+     * The user's ledger row, locked until the transaction ends. A missing row is
+     * first inserted empty in a transaction of its own, so concurrent first
+     * trades can't both insert one; the caller fills an empty row from a replay
+     * taken under the lock.
+     */
+    private Portfolio lockLedger(Long userId) {
+        Optional<Portfolio> existing = portfolioRepository.findForUpdateByUserId(userId);
+        if (existing.isPresent())
+            return existing.get();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            tx.executeWithoutResult(status -> portfolioRepository
+                    .save(Portfolio.builder().userId(userId).updatedAt(Instant.now()).build()));
+        } catch (DataIntegrityViolationException e) {
+            // another transaction inserted it first
+        }
+        return portfolioRepository.findForUpdateByUserId(userId).orElseThrow();
+    }
+
+    private static void overwrite(Portfolio p, Portfolio replayed) {
+        p.getAssetBalances().clear();
+        p.getAssetBalances().putAll(replayed.getAssetBalances());
+        p.getCostBasis().clear();
+        p.getCostBasis().putAll(replayed.getCostBasis());
+        p.setTradeCount(replayed.getTradeCount());
+        p.setUpdatedAt(replayed.getUpdatedAt());
+    }
+
+    private Portfolio createMissing(Long userId) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            return tx.execute(status -> portfolioRepository.save(replay(userId)));
+        } catch (DataIntegrityViolationException e) {
+            // another thread created it first; answer from an in-memory replay
+            return replay(userId);
+        }
+    }
+
+    /** Rebuilds a ledger from database-side aggregates rather than loading every trade. */
+    private Portfolio replay(Long userId) {
+        Portfolio p = Portfolio.builder().userId(userId).build();
+        for (PositionTotal t : investmentRepository.sumPositionsByUserId(userId)) {
+            p.apply(t.type(), t.costCurrency(), t.signedAmount(), t.signedPrice(), t.trades());
+        }
+        p.setUpdatedAt(Instant.now());
+        return p;
+    }
+
+    private static LedgerCheck compare(Long userId, Portfolio stored, Portfolio replayed) {
+        if (stored == null) {
+            return new LedgerCheck(userId, replayed.getTradeCount() == 0, 0, replayed.getTradeCount(),
+                    Set.copyOf(replayed.getAssetBalances().keySet()));
+        }
+        Set<AssetType> drifted = EnumSet.noneOf(AssetType.class);
+        for (AssetType type : AssetType.values()) {
+            if (!sameAmount(stored.getAssetBalances().get(type), replayed.getAssetBalances().get(type)))
+                drifted.add(type);
+            CostBasis a = stored.getCostBasis().get(type);
+            CostBasis b = replayed.getCostBasis().get(type);
+            for (CostCurrency c : CostCurrency.values()) {
+                if (!sameAmount(a == null ? null : a.get(c), b == null ? null : b.get(c)))
+                    drifted.add(type);
+            }
+        }
+        boolean consistent = drifted.isEmpty() && stored.getTradeCount() == replayed.getTradeCount();
+        return new LedgerCheck(userId, consistent, stored.getTradeCount(), replayed.getTradeCount(), drifted);
+    }
+
+    private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        BigDecimal x = a == null ? BigDecimal.ZERO : a;
+        BigDecimal y = b == null ? BigDecimal.ZERO : b;
+        return x.compareTo(y) == 0;
+    }
+
+    private static Map<AssetType, Position> toPositions(Portfolio p) {
+        Map<AssetType, Position> out = new EnumMap<>(AssetType.class);
+        p.getAssetBalances().forEach((type, qty) -> {
+            if (qty == null)
+                return;
+            CostBasis cost = p.getCostBasis().get(type);
+            out.put(type, cost == null
+                    ? new Position(qty, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO)
+                    : new Position(qty, cost.getToman(), cost.getDollar(), cost.getEuro()));
+        });
+        return out;
+    }
+
+    /** Immutable view of one asset's ledger entry. Paid amounts are net of sells, in their original currency. */
+    public record Position(BigDecimal quantity, BigDecimal paidToman, BigDecimal paidDollar, BigDecimal paidEuro) {
+        public BigDecimal paid(CostCurrency currency) {
+            return switch (currency) {
+                case TOMAN -> paidToman;
+                case DOLLAR -> paidDollar;
+                case EURO -> paidEuro;
+            };
+        }
+    }
+
+    public record LedgerCheck(Long userId, boolean consistent, long storedTradeCount, long replayedTradeCount,
+            Set<AssetType> driftedAssets) {
+    }
+}
@@ -0,0 +1,76 @@
+package com.coin.demo.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.PriceQuote;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PriceTimeline;
+import com.coin.demo.repository.PriceQuoteRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persists every price change to {@code price_history} and keeps the whole
+ * history in a {@link PriceTimeline} for as-of lookups, loaded once at startup.
+ */
+@Slf4j
+@Service
+public class PriceHistoryService {
+
+    private final PriceQuoteRepository quoteRepository;
+    private final TransactionTemplate tx;
+    private final PriceTimeline timeline = new PriceTimeline();
+
+    public PriceHistoryService(PriceQuoteRepository quoteRepository, PlatformTransactionManager transactionManager) {
+        this.quoteRepository = quoteRepository;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    void load() {
+        long[] loaded = { 0 };
+        tx.executeWithoutResult(status -> {
+            try (Stream<PriceQuote> quotes = quoteRepository.streamAllInOrder()) {
+                quotes.forEach(q -> {
+                    if (timeline.append(q.getType(), q.getObservedAt(), q.getPriceToman()))
+                        loaded[0]++;
+                });
+            }
+        });
+        log.info("Loaded {} price history points", loaded[0]);
+    }
+
+    public PriceTimeline timeline() {
+        return timeline;
+    }
+
+    /**
+     * Records the prices of a freshly published snapshot that differ from the
+     * last recorded ones. Called from the price refresher thread.
+     */
+    public void record(PriceSnapshot snapshot) {
+        List<PriceQuote> changed = new ArrayList<>();
+        for (Map.Entry<AssetType, BigDecimal> e : snapshot.prices().entrySet()) {
+            BigDecimal last = timeline.latest(e.getKey());
+            if (last != null && last.compareTo(e.getValue()) == 0)
+                continue;
+            changed.add(PriceQuote.builder().type(e.getKey()).observedAt(snapshot.fetchedAt())
+                    .priceToman(e.getValue()).build());
+        }
+        if (changed.isEmpty())
+            return;
+        tx.executeWithoutResult(status -> quoteRepository.saveAll(changed));
+        for (PriceQuote q : changed)
+            timeline.append(q.getType(), q.getObservedAt(), q.getPriceToman());
+    }
+}
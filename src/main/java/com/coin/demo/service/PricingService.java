@@ -1,22 +1,40 @@
 package com.coin.demo.service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.EnumMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
+import com.coin.demo.MetricsConfiguration;
 import com.coin.demo.domain.AssetType;
+import com.coin.demo.pricing.PriceRefresher;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PriceSource;
+import com.coin.demo.pricing.PricesPublishedEvent;
+import com.coin.demo.pricing.PriceTimeline;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 
 @Service
+@RequiredArgsConstructor
+@Timed(MetricsConfiguration.SERVICE_TIMER)
 public class PricingService {
 
+    private final PriceSource priceSource;
+    private final PriceHistoryService priceHistory;
+    private final ApplicationEventPublisher events;
+    private final MeterRegistry registry;
+
     @Value("${pricing.fx.usd_to_toman:60000}")
     private BigDecimal usdToToman;
 
@@ -38,78 +56,78 @@ public class PricingService {
     @Value("${pricing.live.enabled:false}")
     private boolean liveEnabled;
 
-    @Value("${pricing.live.source:https://alanchand.com/en}")
-    private String liveSourceUrl;
+    @Value("${pricing.refresh.ms:300000}")
+    private long refreshMs;
+
+    @Value("${pricing.refresh.backoff.initial-ms:5000}")
+    private long backoffInitialMs;
+
+    @Value("${pricing.refresh.backoff.max-ms:300000}")
+    private long backoffMaxMs;
+
+    private PriceRefresher refresher;
+
+    @PostConstruct
+    void start() {
+        Map<AssetType, BigDecimal> seed = new EnumMap<>(AssetType.class);
+        seed.put(AssetType.DOLLAR, usdToToman);
+        seed.put(AssetType.EURO, eurToToman);
+        seed.put(AssetType.COIN, coinToman);
+        seed.put(AssetType.HALF_COIN, halfCoinToman);
+        seed.put(AssetType.QUARTER_COIN, quarterCoinToman);
+        seed.put(AssetType.CRYPTO, cryptoBtcToman); // naive: treat crypto as BTC for now
+        refresher = new PriceRefresher(priceSource, seed, Duration.ofMillis(refreshMs),
+                Duration.ofMillis(backoffInitialMs), Duration.ofMillis(backoffMaxMs), this::published, registry);
+        for (AssetType type : AssetType.values()) {
+            Gauge.builder("pricing.price", refresher, r -> r.current().unitPriceToman(type).doubleValue())
+                    .tag("asset", type.name()).baseUnit("toman").register(registry);
+        }
+        if (liveEnabled)
+            refresher.start();
+    }
+
+    private void published(PriceSnapshot prices) {
+        priceHistory.record(prices);
+        events.publishEvent(new PricesPublishedEvent(prices));
+    }
+
+    @PreDestroy
+    void stop() {
+        refresher.close();
+    }
 
     public BigDecimal getUnitPriceToman(AssetType type) {
-        return switch (type) {
-            case DOLLAR -> usdToToman;
-            case EURO -> eurToToman;
-            case COIN -> coinToman;
-            case HALF_COIN -> halfCoinToman;
-            case QUARTER_COIN -> quarterCoinToman;
-            case CRYPTO -> cryptoBtcToman; // naive: treat crypto as BTC for now
-        };
+        return refresher.current().unitPriceToman(type);
     }
 
-    private final AtomicLong lastFetchMs = new AtomicLong(0);
-    @Value("${pricing.refresh.ms:300000}")
-    private long refreshMs;
+    /**
+     * The prices to use for one computation. Triggers a background refresh if
+     * stale but returns the currently published snapshot without waiting.
+     */
+    public PriceSnapshot currentSnapshot() {
+        refreshLivePricesIfStale();
+        return refresher.current();
+    }
 
-    public synchronized void refreshLivePricesIfStale() {
-        long now = System.currentTimeMillis();
-        if (now - lastFetchMs.get() < refreshMs)
-            return;
-        if (!liveEnabled) {
-            lastFetchMs.set(now);
-            return;
-        }
-        // Skip if jsoup is not on the classpath (e.g., before app restart after adding
-        // dependency)
-        try {
-            Class.forName("org.jsoup.Jsoup");
-        } catch (ClassNotFoundException e) {
-            lastFetchMs.set(now);
-            return;
-        }
-        try {
-            Document doc = Jsoup.connect(liveSourceUrl).userAgent("Mozilla/5.0").timeout(10000).get();
-            // Currencies (USD/EUR) - pick Buy Price
-            Elements rows = doc.select("table:contains(Currency Name) tr");
-            for (Element tr : rows) {
-                Elements tds = tr.select("td");
-                if (tds.size() >= 3) {
-                    String name = tds.get(0).text().trim();
-                    String buy = tds.get(1).text().replace(",", "").trim();
-                    try {
-                        BigDecimal val = new BigDecimal(buy);
-                        if (name.equalsIgnoreCase("US Dollar"))
-                            usdToToman = val;
-                        if (name.equalsIgnoreCase("Euro"))
-                            eurToToman = val;
-                    } catch (Exception ignored) {
-                    }
-                }
-            }
-            // Gold coin prices
-            Elements h3s = doc.select("h3");
-            for (Element h3 : h3s) {
-                String txt = h3.text();
-                Element priceEl = h3.nextElementSibling();
-                if (priceEl != null) {
-                    String priceTxt = priceEl.text().replace(",", "").trim();
-                    try {
-                        BigDecimal val = new BigDecimal(priceTxt);
-                        if (txt.contains("Full Coin") || txt.contains("Imami"))
-                            coinToman = val;
-                        // NOTE: page may not list half/quarter; leave configured if not found
-                    } catch (Exception ignored) {
-                    }
-                }
-            }
-            lastFetchMs.set(now);
-        } catch (Throwable ignored) {
-            // jsoup absent or network errors; keep existing configured values
-        }
+    /**
+     * Prices as they were at {@code asOf}, from the recorded price history.
+     * Assets with no recorded prices use the current ones.
+     */
+    public PriceSnapshot snapshotAt(Instant asOf) {
+        return priceHistory.timeline().snapshotAt(asOf, refresher.current());
+    }
+
+    public PriceTimeline history() {
+        return priceHistory.timeline();
+    }
+
+    /**
+     * Schedules a background refresh when the cached prices are older than
+     * {@code pricing.refresh.ms}. Returns immediately; callers keep using the
+     * current (possibly stale) prices until the new ones are published.
+     */
+    public void refreshLivePricesIfStale() {
+        if (liveEnabled)
+            refresher.revalidateIfStale();
     }
 }
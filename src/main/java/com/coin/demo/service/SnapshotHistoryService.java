@@ -0,0 +1,103 @@
+package com.coin.demo.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.PortfolioSnapshot;
+import com.coin.demo.domain.PortfolioSnapshotRollup;
+import com.coin.demo.domain.RollupResolution;
+import com.coin.demo.repository.PortfolioSnapshotRepository;
+import com.coin.demo.repository.PortfolioSnapshotRollupRepository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Portfolio value history for charts, sized to a point budget. Reads from the
+ * coarsest rollup that still has at least {@code maxPoints} buckets in the
+ * range (raw snapshots if none does) and thins that down with {@link Lttb}.
+ */
+@Service
+@RequiredArgsConstructor
+public class SnapshotHistoryService {
+
+    private static final RollupResolution[] COARSEST_FIRST = { RollupResolution.WEEK, RollupResolution.DAY,
+            RollupResolution.HOUR };
+    static final String RAW = "RAW";
+
+    private final PortfolioSnapshotRepository snapshotRepository;
+    private final PortfolioSnapshotRollupRepository rollupRepository;
+
+    @Transactional(readOnly = true)
+    public SnapshotHistory history(Long userId, Instant start, Instant end, int maxPoints) {
+        for (RollupResolution resolution : COARSEST_FIRST) {
+            Instant from = resolution.bucketStart(start);
+            // buckets without samples are placeholders still being written
+            if (rollupRepository.countByUserIdAndResolutionAndBucketStartBetweenAndSamplesGreaterThan(userId,
+                    resolution, from, end, 0) >= maxPoints) {
+                List<HistoryPoint> points = rollupRepository
+                        .findByUserIdAndResolutionAndBucketStartBetweenAndSamplesGreaterThanOrderByBucketStartAsc(
+                                userId, resolution, from, end, 0)
+                        .stream().map(SnapshotHistoryService::fromRollup).toList();
+                return downsample(resolution.name(), points, maxPoints);
+            }
+        }
+        List<HistoryPoint> points = snapshotRepository
+                .findByUserIdAndCreatedAtBetweenOrderByCreatedAtAsc(userId, start, end)
+                .stream().map(SnapshotHistoryService::fromSnapshot).toList();
+        return downsample(RAW, points, maxPoints);
+    }
+
+    private static SnapshotHistory downsample(String resolution, List<HistoryPoint> points, int maxPoints) {
+        List<HistoryPoint> sampled = Lttb.downsample(points, maxPoints, p -> p.at().toEpochMilli(),
+                p -> p.close() == null ? 0 : p.close().doubleValue());
+        return new SnapshotHistory(resolution, points.size(), sampled);
+    }
+
+    private static HistoryPoint fromRollup(PortfolioSnapshotRollup r) {
+        Map<AssetType, BigDecimal> values = new EnumMap<>(AssetType.class);
+        putIfPresent(values, AssetType.DOLLAR, r.getDollarValue());
+        putIfPresent(values, AssetType.EURO, r.getEuroValue());
+        putIfPresent(values, AssetType.COIN, r.getCoinValue());
+        putIfPresent(values, AssetType.HALF_COIN, r.getHalfCoinValue());
+        putIfPresent(values, AssetType.QUARTER_COIN, r.getQuarterCoinValue());
+        putIfPresent(values, AssetType.CRYPTO, r.getCryptoValue());
+        return new HistoryPoint(r.getBucketStart(), r.getTotalOpen(), r.getTotalClose(), r.getTotalMin(),
+                r.getTotalMax(), r.getSamples(), values);
+    }
+
+    private static HistoryPoint fromSnapshot(PortfolioSnapshot s) {
+        Map<AssetType, BigDecimal> values = new EnumMap<>(AssetType.class);
+        putIfPresent(values, AssetType.DOLLAR, s.getDollarValue());
+        putIfPresent(values, AssetType.EURO, s.getEuroValue());
+        putIfPresent(values, AssetType.COIN, s.getCoinValue());
+        putIfPresent(values, AssetType.HALF_COIN, s.getHalfCoinValue());
+        putIfPresent(values, AssetType.QUARTER_COIN, s.getQuarterCoinValue());
+        putIfPresent(values, AssetType.CRYPTO, s.getCryptoValue());
+        BigDecimal total = s.getTotalToman();
+        return new HistoryPoint(s.getCreatedAt(), total, total, total, total, 1, values);
+    }
+
+    private static void putIfPresent(Map<AssetType, BigDecimal> values, AssetType type, BigDecimal value) {
+        if (value != null)
+            values.put(type, value);
+    }
+
+    /**
+     * {@code resolution} is HOUR, DAY, WEEK or RAW; {@code sourcePoints} is how
+     * many points were read before downsampling.
+     */
+    public record SnapshotHistory(String resolution, int sourcePoints, List<HistoryPoint> points) {
+    }
+
+    /** Total value in toman over one bucket (or one snapshot), with closing per-asset values. */
+    public record HistoryPoint(Instant at, BigDecimal open, BigDecimal close, BigDecimal min, BigDecimal max,
+            long samples, Map<AssetType, BigDecimal> values) {
+    }
+}
@@ -0,0 +1,310 @@
+package com.coin.demo.service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.PortfolioSnapshot;
+import com.coin.demo.domain.SnapshotRun;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.repository.PortfolioRepository;
+import com.coin.demo.repository.PortfolioSnapshotRepository;
+import com.coin.demo.repository.SnapshotRunRepository;
+import com.coin.demo.repository.UserBalance;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scheduled pass that writes a {@code PortfolioSnapshot} for every user. A run
+ * prices everyone against one {@link PriceSnapshot}, walks user ids in chunks
+ * and values each chunk from the position ledgers on a bounded pool, inserting
+ * the rows with one JDBC batch per chunk and folding them into the rollups.
+ *
+ * <p>Progress is checkpointed as the highest user id below which every chunk
+ * has committed. A run interrupted by a crash stays {@code RUNNING} and the
+ * next trigger resumes it from the checkpoint with its original prices; users
+ * above the checkpoint that already have a row for the run are skipped, and a
+ * unique {@code (runId, userId)} constraint backs that up.
+ */
+@Slf4j
+@Service
+public class SnapshotJobService {
+
+    private static final String INSERT_SQL = "insert into portfolio_snapshot (run_id, user_id, created_at, "
+            + "total_toman, dollar_value, euro_value, coin_value, half_coin_value, quarter_coin_value, crypto_value) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final SnapshotRunRepository runRepository;
+    private final InvestmentRepository investmentRepository;
+    private final PortfolioRepository portfolioRepository;
+    private final PortfolioSnapshotRepository snapshotRepository;
+    private final PositionLedgerService ledgerService;
+    private final SnapshotRollupService rollupService;
+    private final PricingService pricingService;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+
+    private final boolean enabled;
+    private final int threads;
+    private final int chunkSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Timer duration;
+    private final Counter usersCounter;
+    private final Counter rowsCounter;
+    private final Counter failures;
+
+    public SnapshotJobService(SnapshotRunRepository runRepository, InvestmentRepository investmentRepository,
+            PortfolioRepository portfolioRepository, PortfolioSnapshotRepository snapshotRepository,
+            PositionLedgerService ledgerService, SnapshotRollupService rollupService,
+            PricingService pricingService, JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager, MeterRegistry registry,
+            @Value("${snapshot.job.enabled:true}") boolean enabled,
+            @Value("${snapshot.job.threads:4}") int threads,
+            @Value("${snapshot.job.chunk-size:500}") int chunkSize) {
+        this.runRepository = runRepository;
+        this.investmentRepository = investmentRepository;
+        this.portfolioRepository = portfolioRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.ledgerService = ledgerService;
+        this.rollupService = rollupService;
+        this.pricingService = pricingService;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.duration = Timer.builder("snapshot.job.duration").register(registry);
+        this.usersCounter = Counter.builder("snapshot.job.users").register(registry);
+        this.rowsCounter = Counter.builder("snapshot.job.rows").register(registry);
+        this.failures = Counter.builder("snapshot.job.failures").register(registry);
+    }
+
+    @Scheduled(cron = "${snapshot.job.cron:0 0 * * * *}")
+    void scheduledRun() {
+        if (enabled)
+            runNow();
+    }
+
+    /**
+     * Starts a run, or resumes the interrupted one. Returns empty if a run is
+     * already in progress in this process or the run failed (it will be resumed
+     * by the next trigger).
+     */
+    public Optional<SnapshotRun> runNow() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Snapshot run already in progress, skipping");
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(execute());
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.error("Snapshot run failed; it will resume from its checkpoint on the next trigger", e);
+            return Optional.empty();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private SnapshotRun execute() {
+        SnapshotRun run = runRepository.findFirstByStatusOrderByIdDesc(SnapshotRun.Status.RUNNING)
+                .map(r -> {
+                    log.info("Resuming snapshot run {} after user {}", r.getId(), r.getCheckpointUserId());
+                    return r;
+                })
+                .orElseGet(this::startRun);
+        PriceSnapshot prices = new PriceSnapshot(run.getPriceVersion(), run.getPricedAt(), run.getPrices());
+        Checkpoint checkpoint = new Checkpoint(run);
+
+        long startNanos = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("snapshot-job-", 0).daemon().factory());
+        // bounds how far id paging runs ahead of the workers
+        Semaphore inFlight = new Semaphore(threads * 2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            long after = run.getCheckpointUserId();
+            long seq = 0;
+            while (failure.get() == null) {
+                List<Long> userIds = investmentRepository.findUserIdsAfter(after, Limit.of(chunkSize));
+                if (userIds.isEmpty())
+                    break;
+                after = userIds.get(userIds.size() - 1);
+                long chunkSeq = seq++;
+                long lastUserId = after;
+                inFlight.acquireUninterruptibly();
+                CompletableFuture.supplyAsync(() -> writeChunk(run, prices, userIds), pool)
+                        .whenComplete((rows, error) -> {
+                            inFlight.release();
+                            if (error != null) {
+                                failure.compareAndSet(null, error);
+                            } else {
+                                checkpoint.completed(chunkSeq, lastUserId, userIds.size(), rows);
+                            }
+                        });
+            }
+        } finally {
+            pool.shutdown();
+            awaitQuietly(pool);
+            duration.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+        if (failure.get() != null)
+            throw new IllegalStateException("Snapshot chunk failed", failure.get());
+
+        run.setCheckpointUserId(checkpoint.userId);
+        run.setUsersProcessed(checkpoint.users);
+        run.setRowsWritten(checkpoint.rows);
+        run.setStatus(SnapshotRun.Status.COMPLETED);
+        run.setFinishedAt(Instant.now());
+        SnapshotRun saved = runRepository.save(run);
+        Duration took = Duration.ofNanos(System.nanoTime() - startNanos);
+        log.info("Snapshot run {} completed: {} users, {} rows in {} ms ({} users/s)", saved.getId(),
+                checkpoint.users, checkpoint.rows, took.toMillis(), checkpoint.users * 1000 / Math.max(1, took.toMillis()));
+        return saved;
+    }
+
+    private SnapshotRun startRun() {
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        SnapshotRun run = SnapshotRun.builder()
+                .status(SnapshotRun.Status.RUNNING)
+                .startedAt(Instant.now())
+                .priceVersion(prices.version())
+                .pricedAt(prices.fetchedAt())
+                .prices(new EnumMap<>(prices.prices()))
+                .build();
+        return runRepository.save(run);
+    }
+
+    /** Writes snapshot rows for one chunk of users in a single transaction; returns rows inserted. */
+    private int writeChunk(SnapshotRun run, PriceSnapshot prices, List<Long> userIds) {
+        return tx.execute(status -> {
+            Set<Long> done = new HashSet<>(snapshotRepository.findUserIdsByRunId(run.getId(), userIds));
+            List<Long> todo = userIds.stream().filter(id -> !done.contains(id)).toList();
+            if (todo.isEmpty())
+                return 0;
+            Map<Long, Map<AssetType, BigDecimal>> balances = loadBalances(todo);
+            Timestamp createdAt = Timestamp.from(run.getStartedAt());
+            List<PortfolioSnapshot> snapshots = new ArrayList<>(todo.size());
+            List<Object[]> rows = new ArrayList<>(todo.size());
+            for (Long userId : todo) {
+                PortfolioSnapshot s = snapshot(run, userId, PortfolioService.valuesToman(
+                        balances.getOrDefault(userId, Map.of()), prices));
+                snapshots.add(s);
+                rows.add(new Object[] { run.getId(), userId, createdAt, s.getTotalToman(), s.getDollarValue(),
+                        s.getEuroValue(), s.getCoinValue(), s.getHalfCoinValue(), s.getQuarterCoinValue(),
+                        s.getCryptoValue() });
+            }
+            jdbc.batchUpdate(INSERT_SQL, rows);
+            rollupService.apply(snapshots);
+            return rows.size();
+        });
+    }
+
+    private static PortfolioSnapshot snapshot(SnapshotRun run, Long userId, Map<AssetType, BigDecimal> values) {
+        PortfolioSnapshot s = new PortfolioSnapshot();
+        s.setRunId(run.getId());
+        s.setUserId(userId);
+        s.setCreatedAt(run.getStartedAt());
+        s.setTotalToman(values.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add));
+        s.setDollarValue(values.getOrDefault(AssetType.DOLLAR, BigDecimal.ZERO));
+        s.setEuroValue(values.getOrDefault(AssetType.EURO, BigDecimal.ZERO));
+        s.setCoinValue(values.getOrDefault(AssetType.COIN, BigDecimal.ZERO));
+        s.setHalfCoinValue(values.getOrDefault(AssetType.HALF_COIN, BigDecimal.ZERO));
+        s.setQuarterCoinValue(values.getOrDefault(AssetType.QUARTER_COIN, BigDecimal.ZERO));
+        s.setCryptoValue(values.getOrDefault(AssetType.CRYPTO, BigDecimal.ZERO));
+        return s;
+    }
+
+    /** Ledger balances for the chunk in one query; users without a ledger yet get one built. */
+    private Map<Long, Map<AssetType, BigDecimal>> loadBalances(List<Long> userIds) {
+        Map<Long, Map<AssetType, BigDecimal>> balances = new HashMap<>();
+        for (UserBalance b : portfolioRepository.findBalancesByUserIdIn(userIds)) {
+            if (b.amount() != null)
+                balances.computeIfAbsent(b.userId(), id -> new EnumMap<>(AssetType.class)).put(b.type(), b.amount());
+        }
+        for (Long userId : userIds) {
+            if (balances.containsKey(userId))
+                continue;
+            Map<AssetType, BigDecimal> quantities = new EnumMap<>(AssetType.class);
+            ledgerService.positions(userId).forEach((type, position) -> quantities.put(type, position.quantity()));
+            balances.put(userId, quantities);
+        }
+        return balances;
+    }
+
+    private static void awaitQuietly(ExecutorService pool) {
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Chunks finish out of order; the checkpoint only advances over a gap-free
+     * prefix of them, so everything at or below it is known to be committed.
+     */
+    private final class Checkpoint {
+        private final Long runId;
+        private final TreeMap<Long, long[]> finished = new TreeMap<>();
+        private long nextSeq;
+        private long userId;
+        private long users;
+        private long rows;
+
+        Checkpoint(SnapshotRun run) {
+            this.runId = run.getId();
+            this.userId = run.getCheckpointUserId();
+            this.users = run.getUsersProcessed();
+            this.rows = run.getRowsWritten();
+        }
+
+        synchronized void completed(long seq, long lastUserId, int chunkUsers, int chunkRows) {
+            usersCounter.increment(chunkUsers);
+            rowsCounter.increment(chunkRows);
+            finished.put(seq, new long[] { lastUserId, chunkUsers, chunkRows });
+            boolean advanced = false;
+            long[] next;
+            while ((next = finished.remove(nextSeq)) != null) {
+                userId = next[0];
+                users += next[1];
+                rows += next[2];
+                nextSeq++;
+                advanced = true;
+            }
+            if (advanced)
+                runRepository.updateCheckpoint(runId, userId, users, rows);
+        }
+    }
+}
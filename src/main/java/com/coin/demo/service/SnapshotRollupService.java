@@ -0,0 +1,149 @@
+package com.coin.demo.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.coin.demo.domain.PortfolioSnapshot;
+import com.coin.demo.domain.PortfolioSnapshotRollup;
+import com.coin.demo.domain.RollupResolution;
+import com.coin.demo.repository.PortfolioSnapshotRepository;
+import com.coin.demo.repository.PortfolioSnapshotRollupRepository;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Keeps the hourly, daily and weekly {@link PortfolioSnapshotRollup}s in step
+ * with the snapshots, in the transaction that writes them. Rollups are locked
+ * while they are updated, so concurrent snapshot writers don't lose each
+ * other's samples.
+ */
+@Service
+@RequiredArgsConstructor
+public class SnapshotRollupService {
+
+    private static final int REBUILD_CHUNK = 1000;
+
+    private final PortfolioSnapshotRollupRepository rollupRepository;
+    private final PortfolioSnapshotRepository snapshotRepository;
+    private final EntityManager entityManager;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Folds just-written snapshots into their buckets. Locks the affected
+     * rollups with one query per resolution and bucket, which for a batch run
+     * (every row shares a timestamp) means one query per resolution.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(Collection<PortfolioSnapshot> snapshots) {
+        fold(snapshots, true);
+    }
+
+    /**
+     * With {@code lock}, rollups are read under a lock and missing ones created
+     * first; without, as in {@link #rebuild}, which has deleted the user's
+     * rollups in this transaction, they are read plainly and inserted here.
+     */
+    private void fold(Collection<PortfolioSnapshot> snapshots, boolean lock) {
+        for (RollupResolution resolution : RollupResolution.values()) {
+            Map<Instant, List<PortfolioSnapshot>> byBucket = snapshots.stream().collect(Collectors.groupingBy(
+                    s -> resolution.bucketStart(s.getCreatedAt()), TreeMap::new, Collectors.toList()));
+            byBucket.forEach((bucket, group) -> {
+                Set<Long> userIds = group.stream().map(PortfolioSnapshot::getUserId).collect(Collectors.toSet());
+                Map<Long, PortfolioSnapshotRollup> rollups = lock ? lock(resolution, bucket, userIds)
+                        : byUser(rollupRepository.findByResolutionAndBucketStartAndUserIdIn(resolution, bucket,
+                                userIds));
+                List<PortfolioSnapshotRollup> created = new ArrayList<>();
+                for (PortfolioSnapshot s : group) {
+                    PortfolioSnapshotRollup rollup = rollups.get(s.getUserId());
+                    if (rollup == null) {
+                        rollup = PortfolioSnapshotRollup.empty(s.getUserId(), resolution, bucket);
+                        rollups.put(s.getUserId(), rollup);
+                        created.add(rollup);
+                    }
+                    rollup.add(s);
+                }
+                rollupRepository.saveAll(created);
+            });
+        }
+    }
+
+    /** Recomputes a user's rollups from the raw snapshots; returns the number of snapshots read. */
+    @Transactional
+    public long rebuild(Long userId) {
+        rollupRepository.deleteByUserId(userId);
+        long count = 0;
+        List<PortfolioSnapshot> chunk = new ArrayList<>(REBUILD_CHUNK);
+        try (Stream<PortfolioSnapshot> rows = snapshotRepository.streamByUserId(userId)) {
+            for (PortfolioSnapshot s : (Iterable<PortfolioSnapshot>) rows::iterator) {
+                chunk.add(s);
+                if (chunk.size() == REBUILD_CHUNK) {
+                    count += flush(chunk);
+                }
+            }
+        }
+        return count + flush(chunk);
+    }
+
+    /**
+     * The bucket's rollups for these users, locked until the transaction ends.
+     * Missing ones are first inserted empty in a transaction of their own, so
+     * two writers can't both insert one; readers skip them until a snapshot
+     * is folded in.
+     */
+    private Map<Long, PortfolioSnapshotRollup> lock(RollupResolution resolution, Instant bucket, Set<Long> userIds) {
+        Map<Long, PortfolioSnapshotRollup> rollups = byUser(rollupRepository.findForUpdate(resolution, bucket,
+                userIds));
+        if (rollups.size() == userIds.size())
+            return rollups;
+        List<Long> missing = userIds.stream().filter(id -> !rollups.containsKey(id)).sorted().toList();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            tx.executeWithoutResult(status -> rollupRepository.saveAll(
+                    missing.stream().map(id -> PortfolioSnapshotRollup.empty(id, resolution, bucket)).toList()));
+        } catch (DataIntegrityViolationException e) {
+            // another writer inserted some of them; insert the rest one at a time
+            for (Long id : missing) {
+                try {
+                    tx.executeWithoutResult(
+                            status -> rollupRepository.save(PortfolioSnapshotRollup.empty(id, resolution, bucket)));
+                } catch (DataIntegrityViolationException inserted) {
+                    // already there
+                }
+            }
+        }
+        return byUser(rollupRepository.findForUpdate(resolution, bucket, userIds));
+    }
+
+    private static Map<Long, PortfolioSnapshotRollup> byUser(List<PortfolioSnapshotRollup> rollups) {
+        return rollups.stream().collect(Collectors.toMap(PortfolioSnapshotRollup::getUserId, Function.identity()));
+    }
+
+    private int flush(List<PortfolioSnapshot> chunk) {
+        int size = chunk.size();
+        if (size == 0)
+            return 0;
+        fold(chunk, false);
+        entityManager.flush();
+        entityManager.clear();
+        chunk.clear();
+        return size;
+    }
+}
@@ -0,0 +1,61 @@
+package com.coin.demo.service;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@code valuation.trades.scanned{operation, asset}}: how many trades each
+ * kind of computation had to read, so a slow dashboard can be told apart from
+ * a large history. Counters are resolved once per operation, not per call.
+ */
+@Component
+public class ValuationMetrics {
+
+    static final String PNL = "pnl";
+    static final String HISTORY = "history";
+    static final String AS_OF = "as-of";
+    static final String VALUE_CURVE = "value-curve";
+    static final String BULK = "bulk";
+    static final String LOTS = "lots";
+
+    private final MeterRegistry registry;
+    private final Map<String, Map<AssetType, Counter>> counters = new ConcurrentHashMap<>();
+
+    public ValuationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void tradesScanned(String operation, AssetType type, long trades) {
+        if (trades > 0)
+            counters(operation).get(type).increment(trades);
+    }
+
+    public void tradesScanned(String operation, Collection<Investment> trades) {
+        Map<AssetType, Counter> byAsset = counters(operation);
+        Map<AssetType, Long> counts = new EnumMap<>(AssetType.class);
+        for (Investment inv : trades)
+            counts.merge(inv.getType(), 1L, Long::sum);
+        counts.forEach((type, n) -> byAsset.get(type).increment(n));
+    }
+
+    private Map<AssetType, Counter> counters(String operation) {
+        return counters.computeIfAbsent(operation, op -> {
+            Map<AssetType, Counter> byAsset = new EnumMap<>(AssetType.class);
+            for (AssetType type : AssetType.values()) {
+                byAsset.put(type, Counter.builder("valuation.trades.scanned").tag("operation", op)
+                        .tag("asset", type.name()).register(registry));
+            }
+            return byAsset;
+        });
+    }
+}
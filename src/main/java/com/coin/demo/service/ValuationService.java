@@ -2,67 +2,166 @@ package com.coin.demo.service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.coin.demo.MetricsConfiguration;
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.CostCurrency;
 import com.coin.demo.domain.Investment;
 import com.coin.demo.domain.OperationType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PriceTimeline;
 import com.coin.demo.repository.InvestmentRepository;
+import com.coin.demo.repository.PositionTotal;
+import com.coin.demo.service.PositionLedgerService.Position;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 
 @Service
 @RequiredArgsConstructor
+@Timed(MetricsConfiguration.SERVICE_TIMER)
 public class ValuationService {
 
+    private final PositionLedgerService ledgerService;
     private final InvestmentRepository investmentRepository;
     private final PricingService pricingService;
+    private final ValuationMetrics metrics;
 
     public ValuationSummary computePortfolioValuation(Long userId) {
-        pricingService.refreshLivePricesIfStale();
-        List<Investment> list = investmentRepository.findByUserId(userId);
+        return computePortfolioValuation(userId, pricingService.currentSnapshot());
+    }
+
+    public ValuationSummary computePortfolioValuation(Long userId, PriceSnapshot prices) {
+        return fromPositions(ledgerService.positions(userId), prices);
+    }
+
+    /** Valuation of ledger positions at {@code prices}. */
+    static ValuationSummary fromPositions(Map<AssetType, Position> positions, PriceSnapshot prices) {
         BigDecimal initialToman = BigDecimal.ZERO;
         BigDecimal currentToman = BigDecimal.ZERO;
 
-        for (Investment inv : list) {
+        for (Map.Entry<AssetType, Position> e : positions.entrySet()) {
+            Position position = e.getValue();
             // ==== CURRENT VALUE ====
-            BigDecimal amount = inv.getAmount(); // units (e.g. 2 gold coins, 100 USD, etc.)
-            BigDecimal unitCurrent = pricingService.getUnitPriceToman(inv.getType());
-            BigDecimal signedQty = inv.getOperationType() == OperationType.BUY ? amount : amount.negate();
-            currentToman = currentToman.add(unitCurrent.multiply(signedQty));
+            BigDecimal unitCurrent = prices.unitPriceToman(e.getKey());
+            currentToman = currentToman.add(unitCurrent.multiply(position.quantity()));
 
             // ==== INITIAL COST ====
-            // convert original payment into toman using FX
-            BigDecimal unitPaidToman;
-            switch (inv.getCurrency().toUpperCase()) {
-                case "DOLLAR" ->
-                    unitPaidToman = pricingService.getUnitPriceToman(com.coin.demo.domain.AssetType.DOLLAR);
-                case "EURO" ->
-                    unitPaidToman = pricingService.getUnitPriceToman(com.coin.demo.domain.AssetType.EURO);
-                case "TOMAN" ->
-                    unitPaidToman = BigDecimal.ONE;
-                default ->
-                    unitPaidToman = BigDecimal.ONE; // fallback: already in toman
+            // net paid per currency bucket, converted into toman using current FX
+            for (CostCurrency currency : CostCurrency.values()) {
+                initialToman = initialToman.add(position.paid(currency).multiply(prices.tomanPer(currency)));
             }
+        }
+
+        return summarize(initialToman, currentToman, prices);
+    }
+
+    /**
+     * Same valuation computed from database-side aggregates of the trade history
+     * (one row per asset, operation and currency) instead of the ledger.
+     */
+    @Transactional(readOnly = true)
+    public ValuationSummary computePortfolioValuationFromHistory(Long userId, PriceSnapshot prices) {
+        return fromTotals(scanned(ValuationMetrics.HISTORY, investmentRepository.sumPositionsByUserId(userId)),
+                prices);
+    }
 
-            // here: inv.getPrice() is TOTAL paid in that currency
-            BigDecimal paidTotalToman = inv.getPrice().multiply(unitPaidToman);
-            BigDecimal signedTotal = inv.getOperationType() == OperationType.BUY
-                    ? paidTotalToman
-                    : paidTotalToman.negate();
+    /**
+     * The valuation as it stood at {@code asOf}: trades up to then, priced with
+     * the recorded prices of that moment.
+     */
+    @Transactional(readOnly = true)
+    public ValuationSummary computePortfolioValuationAsOf(Long userId, Instant asOf) {
+        return computePortfolioValuationAsOf(userId, asOf, pricingService.snapshotAt(asOf));
+    }
+
+    @Transactional(readOnly = true)
+    public ValuationSummary computePortfolioValuationAsOf(Long userId, Instant asOf, PriceSnapshot prices) {
+        return fromTotals(
+                scanned(ValuationMetrics.AS_OF, investmentRepository.sumPositionsByUserIdAsOf(userId, asOf)), prices);
+    }
 
-            initialToman = initialToman.add(signedTotal);
+    /**
+     * Total portfolio value in toman at each of the given instants. Trades and
+     * price history are both walked forward once, so the cost is one query and
+     * O(trades + timestamps + price points) regardless of how many points are asked for.
+     */
+    @Transactional(readOnly = true)
+    public List<ValuePoint> valueCurve(Long userId, List<Instant> timestamps) {
+        List<Instant> sorted = timestamps.stream().sorted().toList();
+        PriceSnapshot fallback = pricingService.currentSnapshot();
+        PriceTimeline.Cursor prices = pricingService.history().cursor();
+        Map<AssetType, BigDecimal> balances = new EnumMap<>(AssetType.class);
+        List<ValuePoint> curve = new ArrayList<>(sorted.size());
+        Map<AssetType, Long> scannedByAsset = new EnumMap<>(AssetType.class);
+        try (Stream<Investment> trades = investmentRepository.streamByUserId(userId)) {
+            Iterator<Investment> it = trades.iterator();
+            Investment next = it.hasNext() ? it.next() : null;
+            for (Instant at : sorted) {
+                while (next != null && !next.getDate().isAfter(at)) {
+                    scannedByAsset.merge(next.getType(), 1L, Long::sum);
+                    BigDecimal qty = next.getOperationType() == OperationType.BUY ? next.getAmount()
+                            : next.getAmount().negate();
+                    balances.merge(next.getType(), qty, BigDecimal::add);
+                    next = it.hasNext() ? it.next() : null;
+                }
+                prices.advanceTo(at);
+                BigDecimal total = BigDecimal.ZERO;
+                for (Map.Entry<AssetType, BigDecimal> e : balances.entrySet()) {
+                    BigDecimal unit = prices.price(e.getKey());
+                    if (unit == null)
+                        unit = fallback.unitPriceToman(e.getKey());
+                    total = total.add(unit.multiply(e.getValue()));
+                }
+                curve.add(new ValuePoint(at, total.setScale(2, RoundingMode.HALF_UP)));
+            }
         }
+        scannedByAsset.forEach((type, n) -> metrics.tradesScanned(ValuationMetrics.VALUE_CURVE, type, n));
+        return curve;
+    }
+
+    private List<PositionTotal> scanned(String operation, List<PositionTotal> totals) {
+        for (PositionTotal t : totals)
+            metrics.tradesScanned(operation, t.type(), t.trades());
+        return totals;
+    }
 
+    /** Valuation of aggregated trade totals at {@code prices}. */
+    static ValuationSummary fromTotals(List<PositionTotal> totals, PriceSnapshot prices) {
+        BigDecimal initialToman = BigDecimal.ZERO;
+        BigDecimal currentToman = BigDecimal.ZERO;
+        for (PositionTotal t : totals) {
+            currentToman = currentToman.add(prices.unitPriceToman(t.type()).multiply(t.signedAmount()));
+            initialToman = initialToman.add(t.signedPrice().multiply(prices.tomanPer(t.costCurrency())));
+        }
+        return summarize(initialToman, currentToman, prices);
+    }
+
+    private static ValuationSummary summarize(BigDecimal initialToman, BigDecimal currentToman, PriceSnapshot prices) {
         BigDecimal init = initialToman.setScale(2, RoundingMode.HALF_UP);
         BigDecimal curr = currentToman.setScale(2, RoundingMode.HALF_UP);
         BigDecimal roi = init.compareTo(BigDecimal.ZERO) == 0
                 ? BigDecimal.ZERO
                 : curr.subtract(init).divide(init, 6, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100));
-        return new ValuationSummary(init, curr, roi.setScale(2, RoundingMode.HALF_UP));
+        return new ValuationSummary(init, curr, roi.setScale(2, RoundingMode.HALF_UP), prices.version(),
+                prices.fetchedAt());
+    }
+
+    public record ValuePoint(Instant at, BigDecimal totalToman) {
     }
 
-    public record ValuationSummary(BigDecimal initialToman, BigDecimal currentToman, BigDecimal roiPercent) {
+    /** Valuation totals plus the version and fetch time of the prices they were computed with. */
+    public record ValuationSummary(BigDecimal initialToman, BigDecimal currentToman, BigDecimal roiPercent,
+            long priceVersion, Instant pricedAt) {
     }
 }
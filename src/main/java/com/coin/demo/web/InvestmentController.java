@@ -1,29 +1,56 @@
 package com.coin.demo.web;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.time.Duration;
 import java.time.Instant;
 
 import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.journal.TradeIngestService;
+import com.coin.demo.pricing.PriceAggregator;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.service.BulkValuationService;
+import com.coin.demo.service.ChartFormat;
+import com.coin.demo.service.ChartRenderRejectedException;
 import com.coin.demo.service.ChartService;
 import com.coin.demo.service.PortfolioService;
+import com.coin.demo.service.PositionLedgerService;
+import com.coin.demo.service.PricingService;
+import com.coin.demo.service.SnapshotHistoryService;
+import com.coin.demo.service.SnapshotRollupService;
+import com.coin.demo.service.InvestmentImportService;
 import com.coin.demo.service.InvestmentService;
+import com.coin.demo.service.LotBook;
+import com.coin.demo.service.LotService;
 import com.coin.demo.service.ValuationService;
-import com.coin.demo.service.InvestmentService;
 import com.coin.demo.web.dto.InvestmentRequest;
 
 import lombok.RequiredArgsConstructor;
@@ -33,22 +60,87 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class InvestmentController {
 
+    static final String PRICE_VERSION_HEADER = "X-Price-Version";
+    static final String PRICED_AT_HEADER = "X-Priced-At";
+    static final String JOURNAL_SEQUENCE_HEADER = "X-Journal-Sequence";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAY_HEADER = "Idempotent-Replayed";
+    private static final String CHART_TITLE = "Portfolio (Toman)";
+    private static final MediaType SVG = MediaType.valueOf("image/svg+xml");
+    private static final int MAX_HISTORY_LIMIT = 500;
+    private static final int MAX_HISTORY_POINTS = 5000;
+    private static final int MAX_CURVE_POINTS = 5000;
+    private static final int MAX_RANKING_LIMIT = 1000;
+
     private final PortfolioService portfolioService;
     private final ChartService chartService;
     private final InvestmentService investmentService;
     private final ValuationService valuationService;
+    private final PositionLedgerService ledgerService;
+    private final PricingService pricingService;
+    private final InvestmentImportService importService;
+    private final SnapshotHistoryService snapshotHistoryService;
+    private final SnapshotRollupService rollupService;
+    private final PortfolioStreamBroadcaster streamBroadcaster;
+    private final BulkValuationService bulkValuationService;
+    private final LotService lotService;
+    private final TradeIngestService tradeIngestService;
+    private final PriceAggregator priceAggregator;
 
+    /**
+     * Records a trade: 201 once it is stored, or 202 with its
+     * {@value #JOURNAL_SEQUENCE_HEADER} once it is journaled, when the journal
+     * is enabled; 400 if it doesn't fit the investments table. Resending a request with the same
+     * {@value #IDEMPOTENCY_KEY_HEADER} gets the original response, marked with
+     * {@value #IDEMPOTENT_REPLAY_HEADER}, and records nothing.
+     */
     @PostMapping("/investments")
-    public ResponseEntity<?> create(@Validated @RequestBody InvestmentRequest req) {
-        portfolioService.recordTransaction(
-                req.getUserId(),
-                req.getType(),
-                req.getAmount(),
-                req.getCurrency(),
-                req.getPrice(),
-                req.getOperationType(),
-                req.getDate());
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+    public ResponseEntity<?> create(@Validated @RequestBody InvestmentRequest req,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey != null
+                && (idempotencyKey.isBlank() || idempotencyKey.length() > Investment.IDEMPOTENCY_KEY_LENGTH))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    IDEMPOTENCY_KEY_HEADER + " must be 1 to " + Investment.IDEMPOTENCY_KEY_LENGTH + " characters");
+        TradeIngestService.Receipt receipt;
+        try {
+            receipt = tradeIngestService.record(
+                    req.getUserId(),
+                    req.getType(),
+                    req.getAmount(),
+                    req.getCurrency(),
+                    req.getPrice(),
+                    req.getOperationType(),
+                    req.getDate(),
+                    idempotencyKey);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        ResponseEntity.BodyBuilder response;
+        if (receipt.journalSequence() != null) {
+            response = ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(JOURNAL_SEQUENCE_HEADER, Long.toString(receipt.journalSequence()));
+        } else {
+            response = ResponseEntity.status(HttpStatus.CREATED);
+        }
+        if (receipt.repeated())
+            response.header(IDEMPOTENT_REPLAY_HEADER, "true");
+        return response.build();
+    }
+
+    /**
+     * Bulk import of trades as NDJSON (one {@link InvestmentRequest} object per
+     * line) or CSV with a header row. The body is read as a stream; invalid rows
+     * are skipped and listed in the report with their line number.
+     */
+    @PostMapping(path = "/investments/import", consumes = { MediaType.APPLICATION_NDJSON_VALUE, "text/csv" })
+    public ResponseEntity<InvestmentImportService.ImportReport> importInvestments(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+        Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8);
+        InvestmentImportService.ImportReport report = MediaType.parseMediaType(contentType)
+                .isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                        ? importService.importNdjson(reader)
+                        : importService.importCsv(reader);
+        return ResponseEntity.ok(report);
     }
 
     @GetMapping("/investments/{userId}")
@@ -56,15 +148,69 @@ public class InvestmentController {
         return ResponseEntity.ok(investmentService.getInvestmentsForUser(userId));
     }
 
+    /**
+     * Keyset-paginated history, newest first. Pass the returned {@code nextCursor}
+     * back as {@code cursor} for the following page; it is null on the last one.
+     */
+    @GetMapping("/investments/{userId}/history")
+    public ResponseEntity<InvestmentService.HistoryPage> history(@PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_HISTORY_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_HISTORY_LIMIT);
+        }
+        try {
+            return ResponseEntity.ok(investmentService.getHistory(userId, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /** Full history, oldest first, streamed as NDJSON. */
+    @GetMapping(path = "/investments/{userId}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable Long userId) {
+        StreamingResponseBody body = out -> investmentService.exportNdjson(userId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=investments-" + userId + ".ndjson")
+                .body(body);
+    }
+
     @GetMapping("/portfolio/{userId}")
     public ResponseEntity<Map<AssetType, BigDecimal>> portfolio(@PathVariable Long userId) {
-        return ResponseEntity.ok(portfolioService.calculateCurrentBalances(userId));
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        return ResponseEntity.ok(portfolioService.view(userId, prices).balances());
+    }
+
+    /**
+     * Server-sent events: a {@code snapshot} with the full dashboard view, then
+     * a {@code delta} whenever prices are refreshed or the user's trades change it.
+     */
+    @GetMapping(path = "/portfolio/{userId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@PathVariable Long userId) {
+        SseEmitter emitter = streamBroadcaster.subscribe(userId);
+        if (emitter == null)
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many open streams for this user");
+        return emitter;
+    }
+
+    /** Balances, values, allocation and valuation in one response, all at the same prices. */
+    @GetMapping("/portfolio/{userId}/dashboard")
+    public ResponseEntity<PortfolioService.PortfolioView> dashboard(@PathVariable Long userId) {
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        return ResponseEntity.ok().headers(priceHeaders(prices)).body(portfolioService.view(userId, prices));
     }
 
+    /** With {@code asOf}, only trades up to then count and prices are the ones recorded at that time. */
     @GetMapping("/portfolio/{userId}/valuation")
     public ResponseEntity<com.coin.demo.service.ValuationService.ValuationSummary> valuation(
-            @PathVariable Long userId) {
-        return ResponseEntity.ok(valuationService.computePortfolioValuation(userId));
+            @PathVariable Long userId, @RequestParam(required = false) String asOf) {
+        Instant at = parseAsOf(asOf);
+        PriceSnapshot prices = pricesAt(at);
+        return ResponseEntity.ok().headers(priceHeaders(prices))
+                .body(at == null ? portfolioService.view(userId, prices).valuation()
+                        : valuationService.computePortfolioValuationAsOf(userId, at, prices));
     }
 
     @GetMapping("/investments/{userId}/page")
@@ -77,33 +223,237 @@ public class InvestmentController {
         return ResponseEntity.ok(investmentService.getInvestmentsPage(userId, pageable));
     }
 
-    @GetMapping(value = "/portfolio/{userId}/chart", produces = MediaType.IMAGE_PNG_VALUE)
-    public ResponseEntity<byte[]> portfolioChart(@PathVariable Long userId) throws Exception {
-        Map<AssetType, BigDecimal> data = portfolioService.calculateCurrentValuesToman(userId);
-        File file = chartService.generatePortfolioPieChart(data, "Portfolio (Toman)");
-        byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_PNG);
-        return new ResponseEntity<>(bytes, headers, HttpStatus.OK);
+    /**
+     * The portfolio pie chart. Rendering runs on the chart pool without holding
+     * the request thread; the image is then written from its render buffer.
+     * A saturated pool or a render past its timeout answers 503.
+     */
+    @GetMapping("/portfolio/{userId}/chart")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> portfolioChart(@PathVariable Long userId,
+            @RequestParam(defaultValue = "png") String format, WebRequest request) {
+        ChartFormat chartFormat;
+        try {
+            chartFormat = ChartFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported chart format: " + format);
+        }
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        Map<AssetType, BigDecimal> data = portfolioService.view(userId, prices).values();
+        String etag = chartService.fingerprint(data, CHART_TITLE, chartFormat);
+        if (request.checkNotModified(etag)) {
+            // 304 with the ETag already set; nothing rendered
+            return null;
+        }
+        HttpHeaders headers = priceHeaders(prices);
+        headers.setContentType(mediaType(chartFormat));
+        headers.setCacheControl(CacheControl.noCache());
+        // nothing is committed until the image is ready, so a rejection or timeout can still answer 503
+        return chartService.renderPortfolioPieChartAsync(data, CHART_TITLE, chartFormat).thenApply(image -> {
+            headers.setContentLength(image.size());
+            StreamingResponseBody body = image::writeTo;
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+        });
+    }
+
+    private static MediaType mediaType(ChartFormat format) {
+        return switch (format) {
+            case PNG -> MediaType.IMAGE_PNG;
+            case SVG -> SVG;
+        };
+    }
+
+    @ExceptionHandler(ChartRenderRejectedException.class)
+    public ResponseEntity<String> chartRenderRejected(ChartRenderRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
     }
 
     @GetMapping("/portfolio/{userId}/values")
-    public ResponseEntity<Map<AssetType, BigDecimal>> portfolioValues(@PathVariable Long userId) {
-        return ResponseEntity.ok(portfolioService.calculateCurrentValuesToman(userId));
+    public ResponseEntity<Map<AssetType, BigDecimal>> portfolioValues(@PathVariable Long userId,
+            @RequestParam(required = false) String asOf) {
+        Instant at = parseAsOf(asOf);
+        PriceSnapshot prices = pricesAt(at);
+        return ResponseEntity.ok().headers(priceHeaders(prices))
+                .body(at == null ? portfolioService.view(userId, prices).values()
+                        : portfolioService.calculateValuesTomanAsOf(userId, at, prices));
     }
 
+    /** With {@code asOf}, trades after it are left out and the rest are priced as of then. */
     @GetMapping("/portfolio/{userId}/pnl")
     public ResponseEntity<Map<AssetType, BigDecimal>> pnl(
             @PathVariable Long userId,
             @RequestParam("start") String start,
-            @RequestParam("end") String end) {
-        Instant s = Instant.parse(start);
-        Instant e = Instant.parse(end);
-        return ResponseEntity.ok(portfolioService.calculatePnlByAsset(userId, s, e));
+            @RequestParam("end") String end,
+            @RequestParam(required = false) String asOf) {
+        Instant s = parseInstant("start", start);
+        Instant e = parseInstant("end", end);
+        Instant at = parseAsOf(asOf);
+        if (at != null && at.isBefore(e))
+            e = at;
+        PriceSnapshot prices = pricesAt(at);
+        return ResponseEntity.ok().headers(priceHeaders(prices))
+                .body(portfolioService.calculatePnlByAsset(userId, s, e, prices));
+    }
+
+    /**
+     * Open quantity, cost, realized and unrealized P&L per asset from lot
+     * accounting, under {@code method=fifo} (default) or {@code average} cost.
+     */
+    @GetMapping("/portfolio/{userId}/lots")
+    public ResponseEntity<Map<AssetType, LotBook.LotPnl>> lots(@PathVariable Long userId,
+            @RequestParam(defaultValue = "fifo") String method) {
+        LotBook.CostMethod costMethod;
+        try {
+            costMethod = LotBook.CostMethod.valueOf(method.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "method must be fifo or average");
+        }
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        return ResponseEntity.ok().headers(priceHeaders(prices)).body(lotService.pnl(userId, costMethod, prices));
     }
 
     @GetMapping("/portfolio/{userId}/allocation")
-    public ResponseEntity<Map<AssetType, BigDecimal>> allocation(@PathVariable Long userId) {
-        return ResponseEntity.ok(portfolioService.calculateAllocationPercent(userId));
+    public ResponseEntity<Map<AssetType, BigDecimal>> allocation(@PathVariable Long userId,
+            @RequestParam(required = false) String asOf) {
+        Instant at = parseAsOf(asOf);
+        PriceSnapshot prices = pricesAt(at);
+        return ResponseEntity.ok().headers(priceHeaders(prices))
+                .body(at == null ? portfolioService.view(userId, prices).allocation()
+                        : portfolioService.calculateAllocationPercentAsOf(userId, at, prices));
+    }
+
+    /**
+     * Total portfolio value at {@code points} evenly spaced instants from
+     * {@code start} to {@code end} (default: the last 30 days), replayed from
+     * the trade history and recorded prices rather than from snapshots.
+     */
+    @GetMapping("/portfolio/{userId}/value-curve")
+    public ResponseEntity<java.util.List<ValuationService.ValuePoint>> valueCurve(@PathVariable Long userId,
+            @RequestParam(required = false) String start,
+            @RequestParam(required = false) String end,
+            @RequestParam(defaultValue = "100") int points) {
+        if (points < 2 || points > MAX_CURVE_POINTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "points must be between 2 and " + MAX_CURVE_POINTS);
+        }
+        Instant e = end == null ? Instant.now() : parseInstant("end", end);
+        Instant s = start == null ? e.minus(Duration.ofDays(30)) : parseInstant("start", start);
+        if (!s.isBefore(e))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "start must be before end");
+        long span = e.toEpochMilli() - s.toEpochMilli();
+        java.util.List<Instant> timestamps = new java.util.ArrayList<>(points);
+        for (int i = 0; i < points; i++)
+            timestamps.add(s.plusMillis(span * i / (points - 1)));
+        return ResponseEntity.ok(valuationService.valueCurve(userId, timestamps));
+    }
+
+    @GetMapping("/portfolio/{userId}/ledger/verify")
+    public ResponseEntity<PositionLedgerService.LedgerCheck> verifyLedger(@PathVariable Long userId) {
+        return ResponseEntity.ok(ledgerService.verify(userId));
+    }
+
+    @PostMapping("/portfolio/{userId}/ledger/rebuild")
+    public ResponseEntity<PositionLedgerService.LedgerCheck> rebuildLedger(@PathVariable Long userId) {
+        return ResponseEntity.ok(ledgerService.rebuild(userId));
+    }
+
+    /**
+     * Portfolio value history sized for charting: at most {@code maxPoints}
+     * points, read from the coarsest rollup that can fill the budget and
+     * downsampled with LTTB. Defaults to the last year.
+     */
+    @GetMapping("/portfolio/{userId}/history")
+    public ResponseEntity<SnapshotHistoryService.SnapshotHistory> history(@PathVariable Long userId,
+            @RequestParam(required = false) String start,
+            @RequestParam(required = false) String end,
+            @RequestParam(defaultValue = "500") int maxPoints) {
+        if (maxPoints < 3 || maxPoints > MAX_HISTORY_POINTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "maxPoints must be between 3 and " + MAX_HISTORY_POINTS);
+        }
+        Instant e = end == null ? Instant.now() : parseInstant("end", end);
+        Instant s = start == null ? e.minus(Duration.ofDays(365)) : parseInstant("start", start);
+        if (!s.isBefore(e))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "start must be before end");
+        return ResponseEntity.ok(snapshotHistoryService.history(userId, s, e, maxPoints));
+    }
+
+    /** Recomputes the user's snapshot rollups from the raw snapshots; returns how many were read. */
+    @PostMapping("/portfolio/{userId}/history/rebuild")
+    public ResponseEntity<Map<String, Long>> rebuildHistory(@PathVariable Long userId) {
+        return ResponseEntity.ok(Map.of("snapshots", rollupService.rebuild(userId)));
+    }
+
+    /**
+     * Every user's valuation at the current prices, one JSON object per line in
+     * user-id order. The headers name the price snapshot all rows share.
+     */
+    @GetMapping(path = "/valuations", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> valuations() {
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        StreamingResponseBody body = out -> bulkValuationService.exportNdjson(prices, out);
+        return ResponseEntity.ok().headers(priceHeaders(prices)).contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /** The {@code limit} users with the highest ({@code order=desc}) or lowest ROI or total value. */
+    @GetMapping("/valuations/top")
+    public ResponseEntity<java.util.List<BulkValuationService.UserValuation>> topValuations(
+            @RequestParam(defaultValue = "roi") String by,
+            @RequestParam(defaultValue = "desc") String order,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_RANKING_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_RANKING_LIMIT);
+        }
+        BulkValuationService.Ranking ranking;
+        try {
+            ranking = BulkValuationService.Ranking.valueOf(by.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "by must be roi or value");
+        }
+        if (!order.equals("asc") && !order.equals("desc"))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "order must be asc or desc");
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        return ResponseEntity.ok().headers(priceHeaders(prices))
+                .body(bulkValuationService.top(prices, ranking, order.equals("asc"), limit));
+    }
+
+    /**
+     * What each price source answered in the latest refresh, with latency and
+     * receive time, and how the quotes were merged per asset. 204 until the
+     * first refresh has run.
+     */
+    @GetMapping("/prices/sources")
+    public ResponseEntity<PriceAggregator.Round> priceSources() {
+        PriceAggregator.Round round = priceAggregator.lastRound();
+        if (round == null)
+            return ResponseEntity.noContent().build();
+        return ResponseEntity.ok().headers(priceHeaders(pricingService.currentSnapshot())).body(round);
+    }
+
+    private static Instant parseAsOf(String asOf) {
+        return asOf == null ? null : parseInstant("asOf", asOf);
+    }
+
+    private static Instant parseInstant(String param, String value) {
+        try {
+            return Instant.parse(value);
+        } catch (java.time.format.DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, param + " must be an ISO-8601 instant");
+        }
+    }
+
+    private PriceSnapshot pricesAt(Instant asOf) {
+        return asOf == null ? pricingService.currentSnapshot() : pricingService.snapshotAt(asOf);
+    }
+
+    /** Echoes which price snapshot a response was computed against. */
+    private static HttpHeaders priceHeaders(PriceSnapshot prices) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(PRICE_VERSION_HEADER, Long.toString(prices.version()));
+        headers.set(PRICED_AT_HEADER, prices.fetchedAt().toString());
+        return headers;
     }
 }
@@ -0,0 +1,265 @@
+package com.coin.demo.web;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PricesPublishedEvent;
+import com.coin.demo.service.PortfolioChangedEvent;
+import com.coin.demo.service.PortfolioService;
+import com.coin.demo.service.PortfolioService.PortfolioView;
+import com.coin.demo.service.PricingService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Server-sent portfolio updates. Connections are async servlet responses, so
+ * an idle one holds no request thread. When prices are published or a user's
+ * trade commits, the user's view is computed once on a small pool and the
+ * changes since the last push are broadcast to all of that user's
+ * connections. Bursts for the same user collapse into one push.
+ *
+ * <p>Each connection first gets a {@code snapshot} event with the full
+ * {@link PortfolioView}, then {@code delta} events with only what changed.
+ */
+@Slf4j
+@Component
+public class PortfolioStreamBroadcaster {
+
+    static final String SNAPSHOT_EVENT = "snapshot";
+    static final String DELTA_EVENT = "delta";
+
+    private final PortfolioService portfolioService;
+    private final PricingService pricingService;
+    private final long timeoutMs;
+    private final int maxPerUser;
+    private final ScheduledExecutorService pool;
+
+    private final Map<Long, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    /** Last view broadcast per user; deltas are computed against it. */
+    private final Map<Long, PortfolioView> lastSent = new ConcurrentHashMap<>();
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final Object[] locks = new Object[64];
+
+    private final Counter pushes;
+    private final Counter dropped;
+
+    public PortfolioStreamBroadcaster(PortfolioService portfolioService, PricingService pricingService,
+            @Value("${portfolio.stream.threads:2}") int threads,
+            @Value("${portfolio.stream.timeout-ms:1800000}") long timeoutMs,
+            @Value("${portfolio.stream.heartbeat-ms:25000}") long heartbeatMs,
+            @Value("${portfolio.stream.max-per-user:8}") int maxPerUser,
+            MeterRegistry registry) {
+        this.portfolioService = portfolioService;
+        this.pricingService = pricingService;
+        this.timeoutMs = timeoutMs;
+        this.maxPerUser = Math.max(1, maxPerUser);
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+        this.pool = Executors.newScheduledThreadPool(Math.max(1, threads),
+                Thread.ofPlatform().name("portfolio-stream-", 0).daemon().factory());
+        this.pushes = Counter.builder("portfolio.stream.pushes").register(registry);
+        this.dropped = Counter.builder("portfolio.stream.dropped").register(registry);
+        Gauge.builder("portfolio.stream.connections", this, PortfolioStreamBroadcaster::connectionCount)
+                .register(registry);
+        // proxies and browsers close connections that stay silent too long
+        pool.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a stream for {@code userId}. Returns null when the user already has
+     * {@code portfolio.stream.max-per-user} open connections.
+     */
+    public SseEmitter subscribe(Long userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        boolean[] added = { false };
+        // compute keeps this atomic with remove() dropping the user's last connection
+        subscribers.compute(userId, (id, emitters) -> {
+            Set<SseEmitter> set = emitters == null ? new CopyOnWriteArraySet<>() : emitters;
+            if (set.size() < maxPerUser)
+                added[0] = set.add(emitter);
+            return set.isEmpty() ? null : set;
+        });
+        if (!added[0])
+            return null;
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+        pool.execute(() -> sendSnapshot(userId, emitter));
+        return emitter;
+    }
+
+    @EventListener
+    public void onPricesPublished(PricesPublishedEvent event) {
+        subscribers.keySet().forEach(this::schedule);
+    }
+
+    @EventListener
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        if (subscribers.containsKey(event.userId()))
+            schedule(event.userId());
+    }
+
+    public int connectionCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @PreDestroy
+    void close() {
+        pool.shutdownNow();
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+    }
+
+    private void schedule(Long userId) {
+        if (pending.add(userId))
+            pool.execute(() -> {
+                pending.remove(userId);
+                push(userId);
+            });
+    }
+
+    private void sendSnapshot(Long userId, SseEmitter emitter) {
+        try {
+            synchronized (lock(userId)) {
+                PortfolioView view = currentView(userId);
+                // a newly joined connection must not roll back what the others were last sent
+                lastSent.putIfAbsent(userId, view);
+                send(userId, emitter,
+                        SseEmitter.event().name(SNAPSHOT_EVENT).data(view, MediaType.APPLICATION_JSON));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to build portfolio stream snapshot for user {}", userId, e);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void push(Long userId) {
+        Set<SseEmitter> emitters = subscribers.get(userId);
+        if (emitters == null || emitters.isEmpty())
+            return;
+        // one push per user at a time, so deltas go out in the order they were computed
+        synchronized (lock(userId)) {
+            pushTo(userId, emitters);
+        }
+    }
+
+    private void pushTo(Long userId, Set<SseEmitter> emitters) {
+        PortfolioView view;
+        try {
+            view = currentView(userId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to compute portfolio stream update for user {}", userId, e);
+            return;
+        }
+        PortfolioDelta delta = PortfolioDelta.between(lastSent.put(userId, view), view);
+        if (delta == null)
+            return;
+        pushes.increment();
+        // a built event can't be reused: build() appends to it, so make one per connection
+        for (SseEmitter emitter : emitters)
+            send(userId, emitter, SseEmitter.event().name(DELTA_EVENT).data(delta, MediaType.APPLICATION_JSON));
+    }
+
+    private Object lock(Long userId) {
+        return locks[Long.hashCode(userId) & (locks.length - 1)];
+    }
+
+    private PortfolioView currentView(Long userId) {
+        PriceSnapshot prices = pricingService.currentSnapshot();
+        return portfolioService.view(userId, prices);
+    }
+
+    private void heartbeat() {
+        subscribers.forEach((userId, emitters) -> emitters
+                .forEach(e -> send(userId, e, SseEmitter.event().comment("ping"))));
+    }
+
+    private void send(Long userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // client went away; the container may not have told us yet
+            dropped.increment();
+            remove(userId, emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void remove(Long userId, SseEmitter emitter) {
+        subscribers.computeIfPresent(userId, (id, emitters) -> {
+            emitters.remove(emitter);
+            if (!emitters.isEmpty())
+                return emitters;
+            lastSent.remove(id);
+            return null;
+        });
+    }
+
+    /**
+     * What changed between two views: per-asset balances, values and
+     * allocation that differ (zero for assets that disappeared), plus the new
+     * totals and ROI.
+     */
+    public record PortfolioDelta(long priceVersion, Instant pricedAt, Map<AssetType, BigDecimal> balances,
+            Map<AssetType, BigDecimal> values, Map<AssetType, BigDecimal> allocation, BigDecimal currentToman,
+            BigDecimal roiPercent) {
+
+        /** Null when nothing a client displays has changed. */
+        static PortfolioDelta between(PortfolioView before, PortfolioView after) {
+            Map<AssetType, BigDecimal> balances = changed(before == null ? Map.of() : before.balances(),
+                    after.balances());
+            Map<AssetType, BigDecimal> values = changed(before == null ? Map.of() : before.values(), after.values());
+            Map<AssetType, BigDecimal> allocation = changed(before == null ? Map.of() : before.allocation(),
+                    after.allocation());
+            BigDecimal roi = after.valuation().roiPercent();
+            BigDecimal current = after.valuation().currentToman();
+            boolean totalsChanged = before == null
+                    || !sameNumber(before.valuation().roiPercent(), roi)
+                    || !sameNumber(before.valuation().currentToman(), current);
+            if (balances.isEmpty() && values.isEmpty() && allocation.isEmpty() && !totalsChanged)
+                return null;
+            return new PortfolioDelta(after.priceVersion(), after.pricedAt(), balances, values, allocation, current,
+                    roi);
+        }
+
+        private static Map<AssetType, BigDecimal> changed(Map<AssetType, BigDecimal> before,
+                Map<AssetType, BigDecimal> after) {
+            Map<AssetType, BigDecimal> changed = new EnumMap<>(AssetType.class);
+            after.forEach((type, value) -> {
+                if (!sameNumber(before.get(type), value))
+                    changed.put(type, value);
+            });
+            List<AssetType> removed = new ArrayList<>(before.keySet());
+            removed.removeAll(after.keySet());
+            removed.forEach(type -> changed.put(type, BigDecimal.ZERO));
+            return changed;
+        }
+
+        private static boolean sameNumber(BigDecimal a, BigDecimal b) {
+            return Objects.equals(a, b) || (a != null && b != null && a.compareTo(b) == 0);
+        }
+    }
+}
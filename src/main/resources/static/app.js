@@ -1,3 +1,12 @@
+// Idempotency key of the last submission that hasn't succeeded yet: a double click or a
+// retry of the same form reuses it, so the server records the trade once.
+let pendingTx = null;
+
+function newIdempotencyKey() {
+  return crypto.randomUUID ? crypto.randomUUID()
+    : Date.now().toString(36) + '-' + Math.random().toString(36).slice(2);
+}
+
 async function submitTx() {
   const payload = {
     userId: USER_ID,
@@ -17,29 +26,41 @@ async function submitTx() {
     return;
   }
 
+  const body = JSON.stringify(payload);
+  if (!pendingTx || pendingTx.body !== body) {
+    pendingTx = { body, key: newIdempotencyKey() };
+  }
   const res = await fetch('/api/investments', {
     method: 'POST',
-    headers: { 'Content-Type': 'application/json' },
-    body: JSON.stringify(payload)
+    headers: { 'Content-Type': 'application/json', 'Idempotency-Key': pendingTx.key },
+    body
   });
   if (!res.ok) {
     const msg = await res.text();
     showMsg('Failed: ' + msg, 'error');
     return;
   }
+  pendingTx = null;
   document.getElementById('amount').value = '';
   document.getElementById('price').value = '';
   showMsg('Transaction recorded successfully', 'success');
   await loadPortfolio();
 }
 
+let dashboard = null;
+
 async function loadPortfolio() {
+  const res = await fetch(`/api/portfolio/${USER_ID}/dashboard`);
+  dashboard = await res.json();
+  renderPortfolio();
+  await loadChart();
+}
+
+function renderPortfolio() {
   const tbody = document.getElementById('portfolioBody');
   tbody.innerHTML = '';
-  const res = await fetch(`/api/portfolio/${USER_ID}`);
-  const data = await res.json();
-  const valRes = await fetch(`/api/portfolio/${USER_ID}/values`);
-  const values = await valRes.json();
+  const data = dashboard.balances;
+  const values = dashboard.values;
   Object.keys(data).forEach(k => {
     const tr = document.createElement('tr');
     const td1 = document.createElement('td');
@@ -53,13 +74,42 @@ async function loadPortfolio() {
     tr.appendChild(td3);
     tbody.appendChild(tr);
   });
+}
+
+// Live updates: the server sends the full dashboard once, then only what changed.
+function subscribePortfolio() {
+  if (!window.EventSource) return;
+  const source = new EventSource(`/api/portfolio/${USER_ID}/stream`);
+  source.addEventListener('snapshot', e => {
+    dashboard = JSON.parse(e.data);
+    renderPortfolio();
+  });
+  source.addEventListener('delta', e => {
+    if (!dashboard) return;
+    const delta = JSON.parse(e.data);
+    Object.assign(dashboard.balances, delta.balances);
+    Object.assign(dashboard.values, delta.values);
+    Object.assign(dashboard.allocation, delta.allocation);
+    dashboard.priceVersion = delta.priceVersion;
+    renderPortfolio();
+    loadChart();
+  });
+}
 
+async function loadChart() {
+  // 'no-cache' revalidates with If-None-Match, so an unchanged portfolio is a 304 instead of a re-render
+  const res = await fetch(`/api/portfolio/${USER_ID}/chart`, { cache: 'no-cache' });
+  if (!res.ok) return;
   const chart = document.getElementById('chart');
-  chart.src = `/api/portfolio/${USER_ID}/chart?ts=${Date.now()}`;
+  const previous = chart.dataset.objectUrl;
+  chart.dataset.objectUrl = URL.createObjectURL(await res.blob());
+  chart.src = chart.dataset.objectUrl;
+  if (previous) URL.revokeObjectURL(previous);
 }
 
 window.addEventListener('DOMContentLoaded', () => {
   loadPortfolio();
+  subscribePortfolio();
   if (window.$ && typeof $.fn.persianDatepicker === 'function') {
     $('#date-fa').persianDatepicker({
       format: 'YYYY/MM/DD HH:mm',
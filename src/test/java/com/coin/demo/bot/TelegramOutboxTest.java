@@ -0,0 +1,191 @@
+package com.coin.demo.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs the outbox against a local stub of the Bot API so pacing, merging and
+ * 429 handling go through the real HTTP client.
+ */
+class TelegramOutboxTest {
+
+    private static final String OK = "{\"ok\":true,\"result\":{\"message_id\":1,\"date\":0,"
+            + "\"chat\":{\"id\":1,\"type\":\"private\"}}}";
+    private static final String TOO_MANY = "{\"ok\":false,\"error_code\":429,"
+            + "\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}";
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final List<Received> received = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HttpServer server;
+    private TelegramOutbox outbox;
+
+    private record Received(String method, String text, long atNanos) {
+    }
+
+    /** Starts the stub; {@code responder} picks the reply for the n-th request (0-based). */
+    private DefaultAbsSender startStub(IntFunction<String> responder, long firstResponseDelayMs) throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/botTEST/", exchange -> {
+            long at = System.nanoTime();
+            String method = exchange.getRequestURI().getPath().substring("/botTEST/".length());
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String text = method.equals("sendMessage") ? json.readTree(body).path("text").asText() : null;
+            int n = count.getAndIncrement();
+            received.add(new Received(method, text, at));
+            if (n == 0 && firstResponseDelayMs > 0)
+                sleep(firstResponseDelayMs);
+            String response = responder.apply(n);
+            byte[] reply = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.equals(TOO_MANY) ? 429 : 200, reply.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(reply);
+            }
+        });
+        server.start();
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/bot");
+        return new DefaultAbsSender(options, "TEST") {
+        };
+    }
+
+    @AfterEach
+    void stop() {
+        if (outbox != null)
+            outbox.close();
+        if (server != null)
+            server.stop(0);
+    }
+
+    @Test
+    void mergesTextsWaitingBehindAnInFlightMessage() throws Exception {
+        DefaultAbsSender sender = startStub(n -> OK, 300);
+        outbox = new TelegramOutbox(sender, new TelegramProperties.Outbox(), registry);
+
+        outbox.sendText("1", "first");
+        awaitRequests(1);
+        for (int i = 2; i <= 5; i++)
+            outbox.sendText("1", "line " + i);
+        awaitDrained();
+
+        assertEquals(2, received.size());
+        assertEquals("first", received.get(0).text());
+        assertEquals("line 2\n\nline 3\n\nline 4\n\nline 5", received.get(1).text());
+        assertEquals(3, registry.counter("telegram.send.merged").count());
+    }
+
+    @Test
+    void neverMergesPastTheMessageLengthLimit() throws Exception {
+        DefaultAbsSender sender = startStub(n -> OK, 300);
+        TelegramProperties.Outbox config = new TelegramProperties.Outbox();
+        config.setMaxMessageLength(20);
+        outbox = new TelegramOutbox(sender, config, registry);
+
+        outbox.sendText("1", "first");
+        awaitRequests(1);
+        outbox.sendText("1", "aaaaaaaaaa");
+        outbox.sendText("1", "bbbbbbbb");
+        outbox.sendText("1", "cccccccccc");
+        awaitDrained();
+
+        List<String> texts = new ArrayList<>();
+        received.forEach(r -> texts.add(r.text()));
+        assertEquals(List.of("first", "aaaaaaaaaa\n\nbbbbbbbb", "cccccccccc"), texts);
+    }
+
+    @Test
+    void waitsForRetryAfterOn429() throws Exception {
+        DefaultAbsSender sender = startStub(n -> n == 0 ? TOO_MANY : OK, 0);
+        outbox = new TelegramOutbox(sender, new TelegramProperties.Outbox(), registry);
+
+        outbox.sendText("1", "hello");
+        awaitDrained();
+
+        assertEquals(2, received.size());
+        assertEquals("hello", received.get(1).text());
+        long gapMs = TimeUnit.NANOSECONDS.toMillis(received.get(1).atNanos() - received.get(0).atNanos());
+        assertTrue(gapMs >= 950, "retried after " + gapMs + " ms");
+        assertEquals(1, registry.counter("telegram.send.retries").count());
+    }
+
+    @Test
+    void pacesPhotosToOneChat() throws Exception {
+        DefaultAbsSender sender = startStub(n -> OK, 0);
+        TelegramProperties.Outbox config = new TelegramProperties.Outbox();
+        config.setPerChatPerSecond(5);
+        config.setPerChatBurst(1);
+        outbox = new TelegramOutbox(sender, config, registry);
+
+        for (int i = 0; i < 4; i++)
+            outbox.sendPhoto("1", new byte[] { 1, 2, 3 }, "chart.png");
+        awaitDrained();
+
+        assertEquals(4, received.size());
+        for (int i = 1; i < received.size(); i++) {
+            long gapMs = TimeUnit.NANOSECONDS.toMillis(received.get(i).atNanos() - received.get(i - 1).atNanos());
+            assertTrue(gapMs >= 180, "photo " + i + " sent " + gapMs + " ms after the previous one");
+        }
+    }
+
+    @Test
+    void globalLimitSpreadsChatsOut() throws Exception {
+        DefaultAbsSender sender = startStub(n -> OK, 0);
+        TelegramProperties.Outbox config = new TelegramProperties.Outbox();
+        config.setGlobalPerSecond(5);
+        outbox = new TelegramOutbox(sender, config, registry);
+
+        long start = System.nanoTime();
+        for (int chat = 0; chat < 10; chat++)
+            outbox.sendText(String.valueOf(chat), "hi");
+        awaitDrained();
+
+        assertEquals(10, received.size());
+        // a full bucket lets the first 5 through, the next 5 follow at 5 per second
+        long spanMs = TimeUnit.NANOSECONDS.toMillis(received.get(9).atNanos() - start);
+        assertTrue(spanMs >= 900, "10 messages went out within " + spanMs + " ms");
+    }
+
+    private void awaitRequests(int n) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < n && System.nanoTime() < deadline)
+            Thread.sleep(5);
+        assertTrue(received.size() >= n, "stub saw " + received.size() + " requests");
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (outbox.queuedCount() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(5);
+        assertEquals(0, outbox.queuedCount(), "messages still queued");
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
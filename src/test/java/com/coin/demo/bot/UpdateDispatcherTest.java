@@ -0,0 +1,137 @@
+package com.coin.demo.bot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Feeds synthetic updates through the dispatcher; nothing talks to the
+ * Telegram API.
+ */
+class UpdateDispatcherTest {
+
+    @Test
+    void keepsArrivalOrderWithinEachChat() throws Exception {
+        int chats = 20;
+        int perChat = 50;
+        Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(chats * perChat);
+        try (UpdateDispatcher dispatcher = new UpdateDispatcher(update -> {
+            sleepMicros(ThreadLocalRandom.current().nextInt(500));
+            seen.computeIfAbsent(update.getMessage().getChatId(), id -> new ArrayList<>())
+                    .add(update.getUpdateId());
+            done.countDown();
+        }, 8, perChat)) {
+            int updateId = 0;
+            for (int i = 0; i < perChat; i++) {
+                for (long chat = 1; chat <= chats; chat++) {
+                    assertTrue(dispatcher.dispatch(update(++updateId, chat)));
+                }
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        }
+        assertEquals(chats, seen.size());
+        seen.forEach((chat, ids) -> {
+            assertEquals(perChat, ids.size());
+            for (int i = 1; i < ids.size(); i++) {
+                assertTrue(ids.get(i - 1) < ids.get(i), "chat " + chat + " out of order: " + ids);
+            }
+        });
+    }
+
+    @Test
+    void slowChatDoesNotBlockOthersAndGlobalLimitHolds() throws Exception {
+        int limit = 4;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch slowRelease = new CountDownLatch(1);
+        CountDownLatch others = new CountDownLatch(40);
+        try (UpdateDispatcher dispatcher = new UpdateDispatcher(update -> {
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            try {
+                if (update.getMessage().getChatId() == 1L) {
+                    await(slowRelease);
+                } else {
+                    sleepMicros(5_000);
+                    others.countDown();
+                }
+            } finally {
+                running.decrementAndGet();
+            }
+        }, limit, 16)) {
+            dispatcher.dispatch(update(1, 1L));
+            for (int i = 0; i < 40; i++) {
+                dispatcher.dispatch(update(100 + i, 2L + i));
+            }
+            assertTrue(others.await(10, TimeUnit.SECONDS), "other chats stalled behind a slow one");
+            slowRelease.countDown();
+        }
+        assertTrue(maxRunning.get() <= limit, "ran " + maxRunning.get() + " handlers at once");
+        assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test
+    void rejectsUpdatesBeyondPerChatCapacity() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try (UpdateDispatcher dispatcher = new UpdateDispatcher(update -> {
+            started.countDown();
+            await(release);
+        }, 4, 3)) {
+            assertTrue(dispatcher.dispatch(update(1, 7L)));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // one running, three waiting, the rest rejected
+            for (int i = 2; i <= 4; i++) {
+                assertTrue(dispatcher.dispatch(update(i, 7L)));
+            }
+            assertFalse(dispatcher.dispatch(update(5, 7L)));
+            assertTrue(dispatcher.dispatch(update(6, 8L)));
+            assertEquals(1, dispatcher.rejectedCount());
+            release.countDown();
+        }
+    }
+
+    private static Update update(int updateId, long chatId) {
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        Message message = new Message();
+        message.setMessageId(updateId);
+        message.setChat(chat);
+        message.setText("/portfolio");
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepMicros(long micros) {
+        try {
+            TimeUnit.MICROSECONDS.sleep(micros);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.coin.demo.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class IdempotencyIndexTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private IdempotencyIndex<Integer> index(int maxKeys) {
+        return new IdempotencyIndex<>(Duration.ofSeconds(10), maxKeys, clock::get);
+    }
+
+    private Integer load() {
+        return loads.incrementAndGet();
+    }
+
+    @Test
+    void repeatReturnsTheFirstResultWithoutLoading() {
+        IdempotencyIndex<Integer> index = index(100);
+
+        IdempotencyIndex.Outcome<Integer> first = index.resolve("a", this::load);
+        IdempotencyIndex.Outcome<Integer> repeat = index.resolve("a", this::load);
+
+        assertFalse(first.repeated());
+        assertTrue(repeat.repeated());
+        assertEquals(1, repeat.value());
+        assertEquals(1, loads.get());
+        assertEquals(2, index.resolve("b", this::load).value());
+    }
+
+    @Test
+    void keyIsForgottenAfterTheWindow() {
+        IdempotencyIndex<Integer> index = index(100);
+        index.resolve("a", this::load);
+
+        clock.set(Duration.ofSeconds(10).toNanos());
+        assertTrue(index.resolve("a", this::load).repeated());
+
+        clock.set(Duration.ofSeconds(11).toNanos());
+        IdempotencyIndex.Outcome<Integer> later = index.resolve("a", this::load);
+        assertFalse(later.repeated());
+        assertEquals(2, later.value());
+    }
+
+    @Test
+    void oldestKeysAreDroppedBeyondTheLimit() {
+        IdempotencyIndex<Integer> index = index(2);
+        index.resolve("a", this::load);
+        index.resolve("b", this::load);
+        index.resolve("c", this::load);
+
+        assertEquals(2, index.size());
+        assertTrue(index.resolve("c", this::load).repeated());
+        assertFalse(index.resolve("a", this::load).repeated());
+    }
+
+    @Test
+    void failedLoadReleasesTheKey() {
+        IdempotencyIndex<Integer> index = index(100);
+
+        assertThrows(IllegalStateException.class, () -> index.resolve("a", () -> {
+            throw new IllegalStateException("database down");
+        }));
+        IdempotencyIndex.Outcome<Integer> retry = index.resolve("a", this::load);
+
+        assertFalse(retry.repeated());
+        assertEquals(1, retry.value());
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        IdempotencyIndex<Integer> index = index(100);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            Future<IdempotencyIndex.Outcome<Integer>> first = pool.submit(() -> index.resolve("a", () -> {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return load();
+            }));
+            loading.await();
+            List<Future<IdempotencyIndex.Outcome<Integer>>> repeats = new ArrayList<>();
+            for (int i = 0; i < 7; i++)
+                repeats.add(pool.submit(() -> index.resolve("a", this::load)));
+            release.countDown();
+
+            assertFalse(first.get().repeated());
+            for (Future<IdempotencyIndex.Outcome<Integer>> repeat : repeats) {
+                assertTrue(repeat.get().repeated());
+                assertEquals(1, repeat.get().value());
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.coin.demo.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.OperationType;
+
+class TradeJournalTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong flushedEntries = new AtomicLong();
+
+    private static TradeEntry trade(long userId) {
+        return new TradeEntry(userId, AssetType.COIN, new BigDecimal("1.5"), "Toman", new BigDecimal("45000000"),
+                OperationType.BUY, Instant.ofEpochSecond(1_700_000_000L, 123),
+                userId % 2 == 0 ? "key-" + userId : null);
+    }
+
+    private TradeJournal open(long startAfter) throws IOException {
+        return TradeJournal.open(dir, SEGMENT_BYTES, startAfter, flushedEntries::addAndGet);
+    }
+
+    private static List<TradeJournal.Entry> readAll(TradeJournal journal, long afterSeq) throws InterruptedException {
+        TradeJournal.Reader reader = journal.reader(afterSeq);
+        List<TradeJournal.Entry> all = new ArrayList<>();
+        List<TradeJournal.Entry> batch;
+        while (!(batch = reader.next(7, Duration.ZERO)).isEmpty())
+            all.addAll(batch);
+        return all;
+    }
+
+    @Test
+    void entriesRoundTrip() {
+        TradeEntry entry = trade(42);
+        assertEquals(entry, TradeEntry.decode(entry.encode()));
+    }
+
+    @Test
+    void recoversEntriesAcrossSegmentsAfterReopening() throws Exception {
+        try (TradeJournal journal = open(0)) {
+            for (long i = 1; i <= 200; i++)
+                assertEquals(i, journal.append(trade(i)));
+            assertEquals(200, flushedEntries.get());
+        }
+        try (TradeJournal journal = open(0)) {
+            assertEquals(200, journal.lastSeq());
+            List<TradeJournal.Entry> entries = readAll(journal, 150);
+            assertEquals(50, entries.size());
+            assertEquals(151, entries.get(0).seq());
+            assertEquals(trade(200), entries.get(49).trade());
+            assertEquals(201, journal.append(trade(201)));
+        }
+    }
+
+    @Test
+    void truncatesATornTail() throws Exception {
+        try (TradeJournal journal = open(0)) {
+            for (long i = 1; i <= 3; i++)
+                journal.append(trade(i));
+        }
+        Path segment = segments().get(0);
+        long third;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            int length = file.readInt();
+            third = 2L * (TradeJournal.HEADER_BYTES + length);
+            // flip a payload byte of the last entry, as if the crash hit mid-write
+            file.seek(third + TradeJournal.HEADER_BYTES + 3);
+            file.writeByte(0x7f);
+        }
+        try (TradeJournal journal = open(0)) {
+            assertEquals(2, journal.lastSeq());
+            assertEquals(3, journal.append(trade(30)));
+            assertEquals(trade(30), readAll(journal, 2).get(0).trade());
+        }
+    }
+
+    @Test
+    void releaseDeletesAppliedSegmentsButNotTheLast() throws Exception {
+        try (TradeJournal journal = open(0)) {
+            for (long i = 1; i <= 200; i++)
+                journal.append(trade(i));
+            int before = journal.segmentCount();
+            journal.release(200);
+            assertEquals(1, journal.segmentCount());
+            assertEquals(1, segments().size());
+            assertEquals(true, before > 1);
+        }
+        try (TradeJournal journal = open(0)) {
+            assertEquals(201, journal.append(trade(201)));
+        }
+    }
+
+    @Test
+    void continuesAfterTheAppliedCheckpointWhenFilesAreGone() throws Exception {
+        try (TradeJournal journal = open(500)) {
+            assertEquals(501, journal.append(trade(1)));
+            assertThrows(IllegalStateException.class, () -> journal.reader(10));
+        }
+    }
+
+    @Test
+    void concurrentAppendsShareSyncs() throws Exception {
+        int threads = 8;
+        int perThread = 100;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (TradeJournal journal = TradeJournal.open(dir, 1 << 20, 0, flushedEntries::addAndGet)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++)
+                        journal.append(trade(i));
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures)
+                f.get();
+            assertEquals(threads * perThread, journal.durableSeq());
+            assertEquals(threads * perThread, flushedEntries.get());
+            assertEquals(threads * perThread, readAll(journal, 0).size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+}
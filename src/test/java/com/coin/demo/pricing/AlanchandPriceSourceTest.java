@@ -0,0 +1,59 @@
+package com.coin.demo.pricing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.domain.AssetType;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a saved copy of the alanchand page from a local HTTP stub so the
+ * scraper can be exercised offline.
+ */
+class AlanchandPriceSourceTest {
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        byte[] page;
+        try (InputStream in = getClass().getResourceAsStream("/pricing/alanchand.html")) {
+            page = in.readAllBytes();
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/en", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(page);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    @Test
+    void parsesCurrencyAndCoinPricesFromFixture() throws Exception {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/en";
+        Map<AssetType, BigDecimal> prices = new AlanchandPriceSource(url, 2000).fetch();
+
+        assertEquals(0, new BigDecimal("101250").compareTo(prices.get(AssetType.DOLLAR)));
+        assertEquals(0, new BigDecimal("118400").compareTo(prices.get(AssetType.EURO)));
+        assertEquals(0, new BigDecimal("84500000").compareTo(prices.get(AssetType.COIN)));
+        assertFalse(prices.containsKey(AssetType.HALF_COIN));
+    }
+}
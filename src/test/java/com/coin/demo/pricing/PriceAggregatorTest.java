@@ -0,0 +1,218 @@
+package com.coin.demo.pricing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.pricing.PriceAggregator.Provider;
+import com.coin.demo.pricing.PriceAggregator.Status;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Local HTTP fixtures stand in for the price sites, one server per source, so
+ * a slow or failing one doesn't affect the others.
+ */
+class PriceAggregatorTest {
+
+    private static final Duration DEADLINE = Duration.ofSeconds(1);
+    private static final Map<AssetType, String> POINTERS = Map.of(AssetType.COIN, "/coin", AssetType.HALF_COIN,
+            "/half");
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<PriceAggregator> aggregators = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void stopFixtures() {
+        release.countDown();
+        aggregators.forEach(PriceAggregator::close);
+        servers.forEach(server -> server.stop(0));
+    }
+
+    private String fixture(int status, String body, boolean slow) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/prices", exchange -> {
+            if (slow) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/prices";
+    }
+
+    private Provider json(String name, String body) throws IOException {
+        return source(name, fixture(200, body, false));
+    }
+
+    private static Provider source(String name, String url) {
+        return new Provider(new JsonPriceSource(name, url, POINTERS, BigDecimal.ONE, Duration.ofSeconds(5)),
+                DEADLINE);
+    }
+
+    private PriceAggregator aggregator(int quorum, Provider... providers) {
+        PriceAggregator aggregator = new PriceAggregator(List.of(providers), quorum, 0.05, new SimpleMeterRegistry());
+        aggregators.add(aggregator);
+        return aggregator;
+    }
+
+    private static PriceAggregator.SourceQuote quote(PriceAggregator aggregator, String source) {
+        return aggregator.lastRound().quotes().stream().filter(q -> q.source().equals(source)).findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    void publishesTheMedianOfAgreeingSourcesAndRejectsOutliers() throws Exception {
+        PriceAggregator aggregator = aggregator(2,
+                json("a", "{\"coin\": 100}"),
+                json("b", "{\"coin\": \"102\"}"),
+                json("c", "{\"coin\": 150}"));
+
+        Map<AssetType, BigDecimal> prices = aggregator.fetch();
+
+        assertEquals(0, new BigDecimal("101").compareTo(prices.get(AssetType.COIN)));
+        PriceAggregator.Consensus coin = aggregator.lastRound().assets().get(AssetType.COIN);
+        assertEquals(List.of("a", "b"), coin.sources());
+        assertEquals(List.of("c"), coin.outliers());
+        PriceAggregator.SourceQuote a = quote(aggregator, "a");
+        assertEquals(Status.OK, a.status());
+        assertTrue(a.receivedAt() != null && a.latencyMs() >= 0);
+    }
+
+    @Test
+    void twoSourcesFarApartStillPublishAtQuorumOne() throws Exception {
+        PriceAggregator aggregator = aggregator(1,
+                json("a", "{\"coin\": 100}"),
+                json("b", "{\"coin\": 300}"));
+
+        Map<AssetType, BigDecimal> prices = aggregator.fetch();
+
+        assertEquals(0, new BigDecimal("100").compareTo(prices.get(AssetType.COIN)));
+        PriceAggregator.Consensus coin = aggregator.lastRound().assets().get(AssetType.COIN);
+        assertEquals(List.of("a"), coin.sources());
+        assertEquals(List.of("b"), coin.outliers());
+    }
+
+    @Test
+    void twoAgreeingSourcesPublishTheirMidpoint() throws Exception {
+        PriceAggregator aggregator = aggregator(2,
+                json("a", "{\"coin\": 100}"),
+                json("b", "{\"coin\": 104}"));
+
+        Map<AssetType, BigDecimal> prices = aggregator.fetch();
+
+        assertEquals(0, new BigDecimal("102").compareTo(prices.get(AssetType.COIN)));
+        assertTrue(aggregator.lastRound().assets().get(AssetType.COIN).outliers().isEmpty());
+    }
+
+    @Test
+    void assetWithoutQuorumKeepsItsPreviousPrice() throws Exception {
+        PriceAggregator aggregator = aggregator(2,
+                json("a", "{\"coin\": 100, \"half\": 50}"),
+                json("b", "{\"coin\": 101}"));
+
+        Map<AssetType, BigDecimal> prices = aggregator.fetch();
+
+        assertTrue(prices.containsKey(AssetType.COIN));
+        assertFalse(prices.containsKey(AssetType.HALF_COIN));
+        assertNull(aggregator.lastRound().assets().get(AssetType.HALF_COIN).price());
+    }
+
+    @Test
+    void slowSourceDoesNotHoldUpTheRound() throws Exception {
+        PriceAggregator aggregator = aggregator(1,
+                json("fast", "{\"coin\": 100}"),
+                source("slow", fixture(200, "{\"coin\": 100}", true)));
+
+        Map<AssetType, BigDecimal> prices = assertTimeoutPreemptively(Duration.ofSeconds(3), aggregator::fetch);
+
+        assertEquals(0, new BigDecimal("100").compareTo(prices.get(AssetType.COIN)));
+        assertEquals(Status.TIMED_OUT, quote(aggregator, "slow").status());
+    }
+
+    @Test
+    void sourceStillRunningFromTheLastRoundIsSkipped() throws Exception {
+        PriceSource stubborn = new PriceSource() {
+            @Override
+            public String name() {
+                return "stubborn";
+            }
+
+            @Override
+            public Map<AssetType, BigDecimal> fetch() {
+                boolean released = false;
+                while (!released) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                        released = true;
+                    } catch (InterruptedException e) {
+                        // ignored, like a blocking call without a timeout
+                    }
+                }
+                return Map.of(AssetType.COIN, BigDecimal.ONE);
+            }
+        };
+        PriceAggregator aggregator = aggregator(1, json("fast", "{\"coin\": 100}"),
+                new Provider(stubborn, DEADLINE));
+
+        aggregator.fetch();
+        assertEquals(Status.TIMED_OUT, quote(aggregator, "stubborn").status());
+
+        aggregator.fetch();
+        assertEquals(Status.SKIPPED, quote(aggregator, "stubborn").status());
+    }
+
+    @Test
+    void failsWhenNoSourceAnswers() throws Exception {
+        PriceAggregator aggregator = aggregator(1,
+                source("down", fixture(500, "{}", false)),
+                source("slow", fixture(200, "{\"coin\": 100}", true)));
+
+        assertThrows(IOException.class, aggregator::fetch);
+        assertEquals(Status.FAILED, quote(aggregator, "down").status());
+    }
+
+    @Test
+    void jsonSourceScalesQuotesToToman() throws Exception {
+        String url = fixture(200, "{\"data\": {\"coin\": \"1,000,000\"}}", false);
+        JsonPriceSource rial = new JsonPriceSource("rial", url,
+                Map.of(AssetType.COIN, "/data/coin", AssetType.CRYPTO, "/data/missing"), new BigDecimal("0.1"),
+                Duration.ofSeconds(5));
+
+        Map<AssetType, BigDecimal> prices = rial.fetch();
+
+        assertEquals(0, new BigDecimal("100000").compareTo(prices.get(AssetType.COIN)));
+        assertFalse(prices.containsKey(AssetType.CRYPTO));
+    }
+}
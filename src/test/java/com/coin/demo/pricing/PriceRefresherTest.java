@@ -0,0 +1,93 @@
+package com.coin.demo.pricing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.domain.AssetType;
+
+class PriceRefresherTest {
+
+    private static final Map<AssetType, BigDecimal> SEED = Map.of(AssetType.DOLLAR, new BigDecimal("95000"));
+
+    @Test
+    void readersGetStalePricesWhileRefreshIsInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PriceSource slow = new PriceSource() {
+            @Override
+            public String name() {
+                return "slow";
+            }
+
+            @Override
+            public Map<AssetType, BigDecimal> fetch() throws IOException {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Map.of(AssetType.DOLLAR, new BigDecimal("101000"));
+            }
+        };
+
+        try (PriceRefresher refresher = new PriceRefresher(slow, SEED, Duration.ofMinutes(5), Duration.ofSeconds(1),
+                Duration.ofSeconds(10))) {
+            refresher.start();
+            assertTimeoutPreemptively(Duration.ofMillis(500), () -> {
+                refresher.revalidateIfStale();
+                assertEquals(new BigDecimal("95000"), refresher.current().unitPriceToman(AssetType.DOLLAR));
+                assertEquals(0, refresher.current().version());
+            });
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (refresher.isStale() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(new BigDecimal("101000"), refresher.current().unitPriceToman(AssetType.DOLLAR));
+            assertEquals(1, refresher.current().version());
+        }
+    }
+
+    @Test
+    void failuresBackOffWithJitterAndKeepLastPrices() throws Exception {
+        PriceSource failing = new PriceSource() {
+            @Override
+            public String name() {
+                return "failing";
+            }
+
+            @Override
+            public Map<AssetType, BigDecimal> fetch() throws IOException {
+                throw new IOException("connection refused");
+            }
+        };
+
+        try (PriceRefresher refresher = new PriceRefresher(failing, SEED, Duration.ofMinutes(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(8))) {
+            refresher.start();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (refresher.consecutiveFailures() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, refresher.consecutiveFailures());
+            assertEquals(new BigDecimal("95000"), refresher.current().unitPriceToman(AssetType.DOLLAR));
+            assertEquals(0, refresher.current().version());
+
+            for (int failures = 1; failures <= 10; failures++) {
+                long cap = Math.min(8000, 1000L << (failures - 1));
+                long delay = refresher.backoffMs(failures);
+                assertTrue(delay >= cap / 2 && delay <= cap, "delay " + delay + " outside [" + cap / 2 + ", " + cap + "]");
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.coin.demo.pricing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.domain.AssetType;
+
+class PriceTimelineTest {
+
+    private static Instant t(long seconds) {
+        return Instant.EPOCH.plusSeconds(seconds);
+    }
+
+    @Test
+    void pricesAreAStepFunction() {
+        PriceTimeline timeline = new PriceTimeline();
+        timeline.append(AssetType.COIN, t(10), BigDecimal.valueOf(100));
+        timeline.append(AssetType.COIN, t(20), BigDecimal.valueOf(200));
+        timeline.append(AssetType.COIN, t(30), new BigDecimal("300.5"));
+
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(timeline.priceAt(AssetType.COIN, t(5))));
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(timeline.priceAt(AssetType.COIN, t(10))));
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(timeline.priceAt(AssetType.COIN, t(19))));
+        assertEquals(0, BigDecimal.valueOf(200).compareTo(timeline.priceAt(AssetType.COIN, t(20))));
+        assertEquals(0, new BigDecimal("300.5").compareTo(timeline.priceAt(AssetType.COIN, t(1_000))));
+        assertNull(timeline.priceAt(AssetType.EURO, t(20)));
+        assertEquals(PriceTimeline.NONE, timeline.scaledPriceAt(AssetType.EURO, 0));
+    }
+
+    @Test
+    void rejectsOutOfOrderAppends() {
+        PriceTimeline timeline = new PriceTimeline();
+        timeline.append(AssetType.DOLLAR, t(10), BigDecimal.ONE);
+
+        assertFalse(timeline.append(AssetType.DOLLAR, t(10), BigDecimal.TEN));
+        assertFalse(timeline.append(AssetType.DOLLAR, t(5), BigDecimal.TEN));
+        assertEquals(1, timeline.size(AssetType.DOLLAR));
+        assertEquals(0, BigDecimal.ONE.compareTo(timeline.latest(AssetType.DOLLAR)));
+    }
+
+    @Test
+    void snapshotFallsBackForAssetsWithoutHistory() {
+        PriceTimeline timeline = new PriceTimeline();
+        timeline.append(AssetType.COIN, t(10), BigDecimal.valueOf(100));
+        PriceSnapshot current = new PriceSnapshot(7, t(99),
+                Map.of(AssetType.COIN, BigDecimal.valueOf(999), AssetType.EURO, BigDecimal.valueOf(50)));
+
+        PriceSnapshot asOf = timeline.snapshotAt(t(15), current);
+
+        assertEquals(PriceSnapshot.HISTORICAL_VERSION, asOf.version());
+        assertEquals(t(15), asOf.fetchedAt());
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(asOf.unitPriceToman(AssetType.COIN)));
+        assertEquals(0, BigDecimal.valueOf(50).compareTo(asOf.unitPriceToman(AssetType.EURO)));
+    }
+
+    @Test
+    void cursorAgreesWithPointLookups() {
+        Random random = new Random(16L);
+        PriceTimeline timeline = new PriceTimeline();
+        for (AssetType type : AssetType.values()) {
+            long at = random.nextInt(100);
+            for (int i = 0; i < 500; i++) {
+                at += 1 + random.nextInt(100);
+                timeline.append(type, t(at), BigDecimal.valueOf(random.nextInt(1_000_000), 2));
+            }
+        }
+
+        PriceTimeline.Cursor cursor = timeline.cursor();
+        for (long s = 0; s < 60_000; s += 1 + random.nextInt(200)) {
+            cursor.advanceTo(t(s));
+            for (AssetType type : AssetType.values())
+                assertEquals(timeline.priceAt(type, t(s)), cursor.price(type), type + " at " + s);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.coin.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.service.LotBook.CostMethod;
+import com.coin.demo.service.LotBook.LotPnl;
+
+class LotBookTest {
+
+    private static final PriceSnapshot PRICES = new PriceSnapshot(1, Instant.EPOCH,
+            Map.of(AssetType.COIN, new BigDecimal("150")));
+
+    private long seq;
+
+    /** Quantities in whole units, toman in whole toman. */
+    private void trade(LotBook book, boolean buy, long units, long toman) {
+        seq++;
+        book.apply(AssetType.COIN, buy, units * 1_000_000, toman * 100, Instant.ofEpochSecond(seq), seq);
+    }
+
+    @Test
+    void fifoSellsConsumeTheOldestLotsFirst() {
+        LotBook book = new LotBook();
+        trade(book, true, 10, 1000); // 100 each
+        trade(book, true, 10, 2000); // 200 each
+        trade(book, false, 15, 3000);
+
+        LotPnl fifo = book.pnl(CostMethod.FIFO, PRICES).get(AssetType.COIN);
+        // sold 10 @100 + 5 @200 = 2000 for 3000
+        assertEquals(0, new BigDecimal("1000").compareTo(fifo.realized()));
+        assertEquals(0, new BigDecimal("5").compareTo(fifo.openQuantity()));
+        assertEquals(1, fifo.openLots());
+        assertEquals(0, new BigDecimal("1000").compareTo(fifo.openCost()));
+        assertEquals(0, new BigDecimal("750").compareTo(fifo.marketValue()));
+        assertEquals(0, new BigDecimal("-250").compareTo(fifo.unrealized()));
+    }
+
+    @Test
+    void averageCostPoolsTheLots() {
+        LotBook book = new LotBook();
+        trade(book, true, 10, 1000);
+        trade(book, true, 10, 2000);
+        trade(book, false, 15, 3000);
+
+        LotPnl avg = book.pnl(CostMethod.AVERAGE, PRICES).get(AssetType.COIN);
+        // average cost 150: sold 15 for 3000 against 2250
+        assertEquals(0, new BigDecimal("750").compareTo(avg.realized()));
+        assertEquals(0, new BigDecimal("750").compareTo(avg.openCost()));
+        assertEquals(1, avg.openLots());
+        assertEquals(0, BigDecimal.ZERO.compareTo(avg.unrealized()));
+    }
+
+    @Test
+    void realizedPlusUnrealizedIsTheSameUnderBothMethods() {
+        LotBook book = new LotBook();
+        trade(book, true, 3, 300);
+        trade(book, true, 7, 910);
+        trade(book, false, 4, 500);
+        trade(book, true, 2, 330);
+        trade(book, false, 5, 800);
+
+        LotPnl fifo = book.pnl(CostMethod.FIFO, PRICES).get(AssetType.COIN);
+        LotPnl avg = book.pnl(CostMethod.AVERAGE, PRICES).get(AssetType.COIN);
+        assertEquals(0, fifo.realized().add(fifo.unrealized()).compareTo(avg.realized().add(avg.unrealized())));
+    }
+
+    @Test
+    void growsPastTheInitialCapacityInOrder() {
+        LotBook book = new LotBook();
+        for (int i = 1; i <= 20; i++) {
+            trade(book, true, 1, 100L * i);
+            if (i % 3 == 0)
+                trade(book, false, 1, 0);
+        }
+        LotPnl fifo = book.pnl(CostMethod.FIFO, PRICES).get(AssetType.COIN);
+        // the six sells took the lots bought at 100..600
+        assertEquals(14, fifo.openLots());
+        assertEquals(0, new BigDecimal("-2100").compareTo(fifo.realized()));
+    }
+
+    @Test
+    void overSellingIsReportedAsUnmatched() {
+        LotBook book = new LotBook();
+        trade(book, true, 2, 200);
+        trade(book, false, 5, 1000);
+
+        LotPnl fifo = book.pnl(CostMethod.FIFO, PRICES).get(AssetType.COIN);
+        // only 2 of 5 units were matched, for 2/5 of the proceeds
+        assertEquals(0, new BigDecimal("200").compareTo(fifo.realized()));
+        assertEquals(0, new BigDecimal("3").compareTo(fifo.unmatchedQuantity()));
+        assertEquals(0, fifo.openLots());
+    }
+
+    @Test
+    void negativeBuyIsASell() {
+        LotBook book = new LotBook();
+        trade(book, true, 4, 400);
+        seq++;
+        book.apply(AssetType.COIN, true, -1_000_000, -15_000, Instant.ofEpochSecond(seq), seq);
+
+        LotPnl fifo = book.pnl(CostMethod.FIFO, PRICES).get(AssetType.COIN);
+        assertEquals(0, new BigDecimal("50").compareTo(fifo.realized()));
+        assertEquals(0, new BigDecimal("3").compareTo(fifo.openQuantity()));
+    }
+
+    @Test
+    void acceptsOnlyLaterTrades() {
+        LotBook book = new LotBook();
+        book.apply(AssetType.COIN, true, 1, 1, Instant.ofEpochSecond(10), 5);
+
+        assertTrue(book.accepts(Instant.ofEpochSecond(10), 6));
+        assertFalse(book.accepts(Instant.ofEpochSecond(10), 5));
+        assertFalse(book.accepts(Instant.ofEpochSecond(9), 99));
+        assertThrows(IllegalArgumentException.class,
+                () -> book.apply(AssetType.COIN, true, 1, 1, Instant.ofEpochSecond(9), 99));
+    }
+
+    @Test
+    void marketValueIsNullWithoutAPrice() {
+        LotBook book = new LotBook();
+        book.apply(AssetType.EURO, true, 1, 1, Instant.EPOCH, 1);
+
+        LotPnl euro = book.pnl(CostMethod.FIFO, PRICES).get(AssetType.EURO);
+        assertNull(euro.marketValue());
+        assertNull(euro.unrealized());
+    }
+
+    @Test
+    void shareRoundsHalfUpAndSurvivesOverflow() {
+        assertEquals(3, LotBook.share(5, 1, 2));
+        assertEquals(-3, LotBook.share(-5, 1, 2));
+        assertEquals(1, LotBook.share(4, 1, 3));
+        assertEquals(Long.MAX_VALUE / 2 + 1, LotBook.share(Long.MAX_VALUE, 3, 6));
+    }
+}
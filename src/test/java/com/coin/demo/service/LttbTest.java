@@ -0,0 +1,60 @@
+package com.coin.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LttbTest {
+
+    private record Point(double x, double y) {
+    }
+
+    private static List<Point> sample(List<Point> points, int threshold) {
+        return Lttb.downsample(points, threshold, Point::x, Point::y);
+    }
+
+    @Test
+    void returnsInputWhenWithinBudget() {
+        List<Point> points = List.of(new Point(0, 1), new Point(1, 2), new Point(2, 3));
+        assertSame(points, sample(points, 3));
+        assertSame(points, sample(points, 10));
+    }
+
+    @Test
+    void keepsEndpointsOrderAndBudget() {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            points.add(new Point(i, Math.sin(i / 100.0)));
+
+        List<Point> sampled = sample(points, 200);
+
+        assertEquals(200, sampled.size());
+        assertSame(points.get(0), sampled.get(0));
+        assertSame(points.get(points.size() - 1), sampled.get(sampled.size() - 1));
+        for (int i = 1; i < sampled.size(); i++)
+            assertTrue(sampled.get(i).x() > sampled.get(i - 1).x());
+    }
+
+    @Test
+    void keepsIsolatedSpikes() {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++)
+            points.add(new Point(i, i == 437 ? 1_000 : i == 811 ? -1_000 : 0));
+
+        List<Point> sampled = sample(points, 20);
+
+        assertTrue(sampled.contains(points.get(437)));
+        assertTrue(sampled.contains(points.get(811)));
+    }
+
+    @Test
+    void rejectsThresholdBelowThree() {
+        assertThrows(IllegalArgumentException.class, () -> sample(List.of(), 2));
+    }
+}
@@ -0,0 +1,59 @@
+package com.coin.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class NdjsonWriterTest {
+
+    record Row(long id, BigDecimal value) {
+    }
+
+    /** Counts flushes reaching the response stream. */
+    private static final class CountingStream extends FilterOutputStream {
+        int flushes;
+        boolean closed;
+
+        CountingStream(ByteArrayOutputStream target) {
+            super(target);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushes++;
+            super.flush();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void writesOneObjectPerLineWithoutSeparatorsAndFlushesOnlyOnClose() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CountingStream out = new CountingStream(bytes);
+
+        try (NdjsonWriter<Row> ndjson = new NdjsonWriter<>(new ObjectMapper(), Row.class, out)) {
+            ndjson.write(new Row(1, new BigDecimal("10.5")));
+            ndjson.write(new Row(2, BigDecimal.ZERO));
+            ndjson.write(new Row(3, new BigDecimal("-7")));
+            assertEquals(0, out.flushes);
+        }
+
+        assertEquals("{\"id\":1,\"value\":10.5}\n{\"id\":2,\"value\":0}\n{\"id\":3,\"value\":-7}\n",
+                bytes.toString(StandardCharsets.UTF_8));
+        assertEquals(1, out.flushes);
+        assertFalse(out.closed);
+    }
+}
@@ -0,0 +1,138 @@
+package com.coin.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.domain.Investment;
+import com.coin.demo.domain.OperationType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.pricing.PriceTimeline;
+
+/**
+ * Differential test: the fixed-point kernel must agree exactly with the
+ * BigDecimal loop on randomized trade histories.
+ */
+class PnlKernelTest {
+
+    private static final String[] CURRENCIES = { "Toman", "TOMAN", "Dollar", "dollar", "Euro", "USD", "IRR" };
+
+    @Test
+    void fixedPointMatchesExactOnRandomHistories() {
+        Random random = new Random(20251018L);
+        for (int run = 0; run < 500; run++) {
+            PriceSnapshot prices = randomPrices(random, 2);
+            List<Investment> history = randomHistory(random, 1 + random.nextInt(200), 1_000_000_000L);
+            assertEquals(PnlKernel.exact(history, prices), PnlKernel.fixedPointOrThrow(history, prices),
+                    "run " + run);
+        }
+    }
+
+    @Test
+    void largeValuesOverflowingOneLongStayExact() {
+        Random random = new Random(7L);
+        for (int run = 0; run < 200; run++) {
+            PriceSnapshot prices = randomPrices(random, 2);
+            // totals near the 19,6 column limit: products exceed 64 bits but fit the 128-bit accumulator
+            List<Investment> history = randomHistory(random, 1 + random.nextInt(50), 9_000_000_000_000L);
+            assertEquals(PnlKernel.exact(history, prices), PnlKernel.fixedPointOrThrow(history, prices),
+                    "run " + run);
+        }
+    }
+
+    @Test
+    void unrepresentableInputsFallBackToExact() {
+        Random random = new Random(11L);
+        for (int run = 0; run < 100; run++) {
+            // unit prices with three decimals can't be held at toman scale 2
+            PriceSnapshot prices = randomPrices(random, 3);
+            List<Investment> history = randomHistory(random, 1 + random.nextInt(50), 1_000_000L);
+            if (prices.prices().values().stream().anyMatch(p -> p.stripTrailingZeros().scale() > 2)) {
+                assertThrows(ArithmeticException.class, () -> PnlKernel.fixedPointOrThrow(history, prices));
+            }
+            assertEquals(PnlKernel.exact(history, prices), PnlKernel.fixedPoint(history, prices), "run " + run);
+        }
+    }
+
+    @Test
+    void tradeDateFxMatchesExact() {
+        Random random = new Random(16L);
+        for (int run = 0; run < 200; run++) {
+            PriceSnapshot prices = randomPrices(random, 2);
+            PriceTimeline fx = new PriceTimeline();
+            for (int i = 0; i < 20; i++) {
+                Instant at = Instant.EPOCH.plusSeconds(10L * i);
+                fx.append(AssetType.DOLLAR, at, BigDecimal.valueOf(50_000 + random.nextInt(50_000)));
+                fx.append(AssetType.EURO, at, BigDecimal.valueOf(55_000 + random.nextInt(50_000), 2));
+            }
+            List<Investment> history = randomHistory(random, 1 + random.nextInt(200), 1_000_000_000L);
+            assertEquals(PnlKernel.exact(history, prices, fx), PnlKernel.fixedPointOrThrow(history, prices, fx),
+                    "run " + run);
+        }
+    }
+
+    @Test
+    void paymentsUseTheRateOfTheTradeDate() {
+        PriceSnapshot prices = new PriceSnapshot(1, Instant.EPOCH,
+                Map.of(AssetType.COIN, BigDecimal.valueOf(1_000), AssetType.DOLLAR, BigDecimal.valueOf(100)));
+        PriceTimeline fx = new PriceTimeline();
+        fx.append(AssetType.DOLLAR, Instant.EPOCH, BigDecimal.valueOf(40));
+        fx.append(AssetType.DOLLAR, Instant.EPOCH.plusSeconds(100), BigDecimal.valueOf(100));
+        List<Investment> history = List.of(Investment.builder()
+                .userId(1L)
+                .type(AssetType.COIN)
+                .operationType(OperationType.BUY)
+                .amount(BigDecimal.ONE)
+                .price(BigDecimal.TEN)
+                .currency("Dollar")
+                .date(Instant.EPOCH.plusSeconds(50))
+                .build());
+
+        // paid 10 dollars at 40 toman each, not at today's 100
+        assertEquals(0, BigDecimal.valueOf(600).compareTo(PnlKernel.exact(history, prices, fx).get(AssetType.COIN)));
+        assertEquals(0, BigDecimal.valueOf(0).compareTo(PnlKernel.exact(history, prices).get(AssetType.COIN)));
+    }
+
+    private static PriceSnapshot randomPrices(Random random, int scale) {
+        Map<AssetType, BigDecimal> prices = new EnumMap<>(AssetType.class);
+        for (AssetType type : AssetType.values()) {
+            long unscaled = 1 + (random.nextLong() & Long.MAX_VALUE) % 500_000_000_000L;
+            prices.put(type, BigDecimal.valueOf(unscaled, random.nextInt(scale + 1)));
+        }
+        return new PriceSnapshot(1, Instant.EPOCH, prices);
+    }
+
+    private static List<Investment> randomHistory(Random random, int size, long maxWhole) {
+        List<Investment> history = new ArrayList<>(size);
+        AssetType[] types = AssetType.values();
+        for (int i = 0; i < size; i++) {
+            history.add(Investment.builder()
+                    .userId(1L)
+                    .type(types[random.nextInt(types.length)])
+                    .operationType(random.nextInt(3) == 0 ? OperationType.SELL : OperationType.BUY)
+                    .amount(randomScale6(random, maxWhole))
+                    .price(randomScale6(random, maxWhole))
+                    .currency(CURRENCIES[random.nextInt(CURRENCIES.length)])
+                    .date(Instant.EPOCH.plusSeconds(i))
+                    .build());
+        }
+        return history;
+    }
+
+    private static BigDecimal randomScale6(Random random, long maxWhole) {
+        long whole = (random.nextLong() & Long.MAX_VALUE) % maxWhole;
+        long fraction = random.nextInt(1_000_000);
+        // values read from the 19,6 columns always come back at scale 6
+        return BigDecimal.valueOf(whole).add(BigDecimal.valueOf(fraction, 6)).setScale(6);
+    }
+}
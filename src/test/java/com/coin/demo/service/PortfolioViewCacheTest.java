@@ -0,0 +1,117 @@
+package com.coin.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.pricing.PriceSnapshot;
+import com.coin.demo.service.PortfolioService.PortfolioView;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PortfolioViewCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Object> events = new ArrayList<>();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private static PriceSnapshot prices(long version) {
+        return new PriceSnapshot(version, Instant.EPOCH, Map.of(AssetType.COIN, BigDecimal.ONE));
+    }
+
+    private PortfolioView load(PriceSnapshot prices) {
+        loads.incrementAndGet();
+        return new PortfolioView(prices.version(), prices.fetchedAt(), Map.of(), Map.of(), Map.of(), null);
+    }
+
+    @Test
+    void hitsUntilThePriceVersionChanges() {
+        PortfolioViewCache cache = new PortfolioViewCache(true, 10, registry, events::add);
+
+        PortfolioView first = cache.get(1L, prices(1), () -> load(prices(1)));
+        assertSame(first, cache.get(1L, prices(1), () -> load(prices(1))));
+        assertNotSame(first, cache.get(1L, prices(2), () -> load(prices(2))));
+
+        assertEquals(2, loads.get());
+        assertEquals(1, registry.counter("portfolio.cache.gets", "result", "hit").count());
+        assertEquals(2, registry.counter("portfolio.cache.gets", "result", "miss").count());
+    }
+
+    @Test
+    void neverCachesHistoricalPrices() {
+        PortfolioViewCache cache = new PortfolioViewCache(true, 10, registry, events::add);
+        PriceSnapshot historical = prices(PriceSnapshot.HISTORICAL_VERSION);
+
+        cache.get(1L, historical, () -> load(historical));
+        cache.get(1L, historical, () -> load(historical));
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedUser() {
+        PortfolioViewCache cache = new PortfolioViewCache(true, 2, registry, events::add);
+
+        cache.get(1L, prices(1), () -> load(prices(1)));
+        cache.get(2L, prices(1), () -> load(prices(1)));
+        cache.get(1L, prices(1), () -> load(prices(1)));
+        cache.get(3L, prices(1), () -> load(prices(1)));
+        cache.get(1L, prices(1), () -> load(prices(1)));
+        cache.get(2L, prices(1), () -> load(prices(1)));
+
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.size());
+        assertEquals(2, registry.counter("portfolio.cache.evictions").count());
+    }
+
+    @Test
+    void invalidatesOnlyAfterCommit() {
+        PortfolioViewCache cache = new PortfolioViewCache(true, 10, registry, events::add);
+        cache.get(1L, prices(1), () -> load(prices(1)));
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateAfterCommit(1L);
+        assertEquals(1, cache.size());
+        assertEquals(List.of(), events);
+
+        for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations())
+            sync.afterCommit();
+        assertEquals(0, cache.size());
+        assertEquals(List.of(new PortfolioChangedEvent(1L)), events);
+    }
+
+    @Test
+    void aReadOverlappingACommitIsNotCached() {
+        PortfolioViewCache cache = new PortfolioViewCache(true, 10, registry, events::add);
+
+        // the commit lands while the read is still computing from pre-commit data
+        cache.get(1L, prices(1), () -> {
+            PortfolioView stale = load(prices(1));
+            cache.invalidate(1L);
+            return stale;
+        });
+        cache.get(1L, prices(1), () -> load(prices(1)));
+
+        assertEquals(2, loads.get());
+    }
+}
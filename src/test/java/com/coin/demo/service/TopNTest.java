@@ -0,0 +1,38 @@
+package com.coin.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.service.BulkValuationService.TopN;
+
+class TopNTest {
+
+    @Test
+    void keepsTheGreatestRowsGreatestFirst() {
+        TopN<Integer> top = new TopN<>(Comparator.naturalOrder(), 3);
+        List.of(5, 1, 9, 3, 7, 2, 8).forEach(top);
+
+        assertEquals(List.of(9, 8, 7), top.sorted());
+    }
+
+    @Test
+    void reversedOrderKeepsTheSmallest() {
+        TopN<Integer> bottom = new TopN<>(Comparator.<Integer>naturalOrder().reversed(), 2);
+        IntStream.rangeClosed(1, 1000).map(i -> 1001 - i).forEach(bottom::accept);
+
+        assertEquals(List.of(1, 2), bottom.sorted());
+    }
+
+    @Test
+    void returnsEverythingWhenThereAreFewerRowsThanTheLimit() {
+        TopN<Integer> top = new TopN<>(Comparator.naturalOrder(), 10);
+        List.of(2, 3, 1).forEach(top);
+
+        assertEquals(List.of(3, 2, 1), top.sorted());
+    }
+}
@@ -0,0 +1,57 @@
+package com.coin.demo.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.coin.demo.domain.AssetType;
+import com.coin.demo.service.PortfolioService.PortfolioView;
+import com.coin.demo.service.ValuationService.ValuationSummary;
+import com.coin.demo.web.PortfolioStreamBroadcaster.PortfolioDelta;
+
+class PortfolioDeltaTest {
+
+    private static PortfolioView view(long version, Map<AssetType, BigDecimal> values, String roi) {
+        BigDecimal total = values.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new PortfolioView(version, Instant.EPOCH, Map.of(), values, Map.of(),
+                new ValuationSummary(BigDecimal.ONE, total, new BigDecimal(roi), version, Instant.EPOCH));
+    }
+
+    @Test
+    void firstPushCarriesEverything() {
+        PortfolioView after = view(1, Map.of(AssetType.COIN, BigDecimal.TEN), "5");
+
+        PortfolioDelta delta = PortfolioDelta.between(null, after);
+
+        assertEquals(Map.of(AssetType.COIN, BigDecimal.TEN), delta.values());
+        assertEquals(BigDecimal.TEN, delta.currentToman());
+    }
+
+    @Test
+    void sendsOnlyChangedAndRemovedAssets() {
+        PortfolioView before = view(1, Map.of(AssetType.COIN, BigDecimal.TEN, AssetType.EURO,
+                BigDecimal.ONE, AssetType.DOLLAR, BigDecimal.ONE), "5");
+        PortfolioView after = view(2, Map.of(AssetType.COIN, BigDecimal.TEN, AssetType.EURO,
+                new BigDecimal("2.00")), "6");
+
+        PortfolioDelta delta = PortfolioDelta.between(before, after);
+
+        assertEquals(Map.of(AssetType.EURO, new BigDecimal("2.00"), AssetType.DOLLAR, BigDecimal.ZERO),
+                delta.values());
+        assertEquals(2, delta.priceVersion());
+        assertEquals(new BigDecimal("6"), delta.roiPercent());
+    }
+
+    @Test
+    void nothingToSendWhenOnlyTheVersionMoved() {
+        PortfolioView before = view(1, Map.of(AssetType.COIN, new BigDecimal("10.00")), "5");
+        PortfolioView after = view(2, Map.of(AssetType.COIN, BigDecimal.TEN), "5.0");
+
+        assertNull(PortfolioDelta.between(before, after));
+    }
+}